@@ -27,6 +27,7 @@ package be.gov.data.av2kml;
 
 import be.gov.data.av2kml.converter.Converter;
 import be.gov.data.av2kml.converter.ConverterKML;
+import be.gov.data.av2kml.converter.Simplifier;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
@@ -34,6 +35,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -58,7 +60,13 @@ public class Main {
 		
 	private final static Options OPTS = new Options()
 		.addRequiredOption("i", "indir", true, "input directory")
-		.addRequiredOption("o", "outdir", true, "output directory");
+		.addRequiredOption("o", "outdir", true, "output directory")
+		.addOption("t", "threads", true, "number of threads (default: number of processors)")
+		.addOption("s", "simplify", true, "simplification: none, naive, douglas-peucker or topology-preserving (default: naive)")
+		.addOption(null, "tolerance", true, "simplification tolerance in meters, not with --lod (default: 10)")
+		.addOption(null, "lod", false, "create 4 levels of detail per layer, using KML regions")
+		.addOption(null, "kmz", false, "write one KMZ file instead of separate KML files")
+		.addOption(null, "kmz-level", true, "KMZ compression level 0-9 (default: 6)");
 
 	/**
 	 * Print help info
@@ -148,7 +156,61 @@ public class Main {
 			}
 		}
 		
-		Converter conv = new ConverterKML();
+		ConverterKML conv = new ConverterKML();
+		if (cli.hasOption("t")) {
+			try {
+				int threads = Integer.parseInt(cli.getOptionValue("t"));
+				if (threads < 1) {
+					throw new NumberFormatException();
+				}
+				conv.setThreads(threads);
+			} catch (NumberFormatException nfe) {
+				LOG.error("Invalid number of threads {}", cli.getOptionValue("t"));
+				System.exit(-1);
+			}
+		}
+		if (cli.hasOption("s")) {
+			try {
+				String engine = cli.getOptionValue("s").toUpperCase(Locale.ROOT).replace('-', '_');
+				conv.setSimplification(Simplifier.Engine.valueOf(engine));
+			} catch (IllegalArgumentException iae) {
+				LOG.error("Invalid simplification {}", cli.getOptionValue("s"));
+				System.exit(-1);
+			}
+		}
+		conv.setLevelOfDetail(cli.hasOption("lod"));
+		if (cli.hasOption("kmz")) {
+			try {
+				int level = Integer.parseInt(cli.getOptionValue("kmz-level", "6"));
+				if (level < 0 || level > 9) {
+					throw new NumberFormatException();
+				}
+				conv.setKmz(level);
+			} catch (NumberFormatException nfe) {
+				LOG.error("Invalid KMZ compression level {}", cli.getOptionValue("kmz-level"));
+				System.exit(-1);
+			}
+		} else if (cli.hasOption("kmz-level")) {
+			LOG.error("KMZ compression level can only be used with --kmz");
+			System.exit(-1);
+		}
+		if (cli.hasOption("tolerance")) {
+			if (cli.hasOption("lod")) {
+				LOG.error("Tolerance cannot be combined with levels of detail, each level has its own tolerance");
+				System.exit(-1);
+			}
+			try {
+				double tolerance = Double.parseDouble(cli.getOptionValue("tolerance"));
+				// also rejects NaN
+				if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+					throw new NumberFormatException();
+				}
+				conv.setTolerance(tolerance);
+			} catch (NumberFormatException nfe) {
+				LOG.error("Invalid tolerance {}", cli.getOptionValue("tolerance"));
+				System.exit(-1);
+			}
+		}
 		try {
 			LOG.info("Converting shapefiles {} to {}", pin, pout);
 			conv.convert(pin, pout);
@@ -25,18 +25,10 @@
  */
 package be.gov.data.av2kml.converter;
 
-import de.micromata.opengis.kml.v_2_2_0.Document;
-import de.micromata.opengis.kml.v_2_2_0.Folder;
-import de.micromata.opengis.kml.v_2_2_0.Kml;
-import de.micromata.opengis.kml.v_2_2_0.KmlFactory;
-import de.micromata.opengis.kml.v_2_2_0.MultiGeometry;
-import de.micromata.opengis.kml.v_2_2_0.Placemark;
-import de.micromata.opengis.kml.v_2_2_0.Style;
-
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -46,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -54,21 +47,17 @@ import org.geotools.data.DataStoreFinder;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.LineString;
-import org.locationtech.jts.geom.MultiPolygon;
-import org.locationtech.jts.geom.Polygon;
 
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
-import org.opengis.referencing.operation.TransformException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,6 +65,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Converter to KML
  * 
+ * When each shape is simplified on its own, the shapefiles are read, converted and written in batches,
+ * so only one batch of shapes is kept in memory.
+ * The topology-preserving simplification and the levels of detail need all the shapes at once,
+ * so these are kept in memory (in Lambert 2008 coordinates).
+ * 
  * @author Bart Hanssens
  */
 public class ConverterKML implements Converter {
@@ -83,6 +77,77 @@ public class ConverterKML implements Converter {
 
 	private static CoordinateReferenceSystem LAM08;
 
+	// level of detail: tolerance in meters and minimum size on screen in pixels, from coarse to detailed
+	private final static double[] LOD_TOLERANCE = { 500.0, 100.0, 25.0, 5.0 };
+	private final static int[] LOD_PIXELS = { 0, 128, 512, 2048 };
+
+	private final static String KMZ_FILE = "adminvector.kmz";
+
+	// municipalities and nine groups of municipal sections
+	private final static int LAYERS = 10;
+	// number of places read, simplified, reprojected and written at once when streaming
+	private final static int BATCH_SIZE = 1024;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Simplifier.Engine engine = Simplifier.Engine.NAIVE;
+	private double tolerance = 10.0;
+	private boolean lod = false;
+	private int kmzLevel = -1;
+
+	private Reprojector reprojector;
+	private KmzWriter kmz;
+
+	/**
+	 * Function processing a batch of places
+	 */
+	private interface PlaceBatch {
+		void accept(List<Place> places) throws IOException;
+	}
+
+	/**
+	 * Set the number of threads used for converting coordinates and writing files
+	 * 
+	 * @param threads number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the simplification engine
+	 * 
+	 * @param engine simplification engine
+	 */
+	public void setSimplification(Simplifier.Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Set the tolerance of the simplification
+	 * 
+	 * @param tolerance tolerance in meters
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Create several levels of detail, instead of one file per layer
+	 * 
+	 * @param lod true to create levels of detail
+	 */
+	public void setLevelOfDetail(boolean lod) {
+		this.lod = lod;
+	}
+
+	/**
+	 * Write all KML files into one KMZ file, instead of separate KML files
+	 * 
+	 * @param level compression level (0-9), or -1 to write separate KML files
+	 */
+	public void setKmz(int level) {
+		this.kmzLevel = level;
+	}
 	
 	/**
 	 * Initialize coordinate system
@@ -119,310 +184,731 @@ public class ConverterKML implements Converter {
 	}
 
 	/**
-	 * Reduce the KML file size by simplifying the shape and number of decimal digits.
+	 * Join the names of the location into one string
 	 * 
-	 * @param geom shapefile geometry
-	 * @return list of KML coordinates 
+	 * @param feature
+	 * @return 
 	 */
-	private List<de.micromata.opengis.kml.v_2_2_0.Coordinate> smoothedCoords(Geometry geom) {
-		Coordinate[] coords = geom.getCoordinates();
-		List<de.micromata.opengis.kml.v_2_2_0.Coordinate> smoothed = new ArrayList<>();
+	private String joinLocationNames(SimpleFeature feature) {
+		StringBuilder builder = new StringBuilder();
 		
-		double prevX = 0.0;
-		double prevY = 0.0;
-				
-		for(int p = 0; p < coords.length; p++) {
-			// naive algorithm, remove points that are very close to the previous one
-			if (Math.abs(coords[p].x - prevX) > 0.0004 || Math.abs(coords[p].y - prevY) > 0.0004) {
-				double smoothX = Math.round(coords[p].x * 10000) / 10000.0d;
-				double smoothY = Math.round(coords[p].y * 10000) / 10000.0d;
-				
-				smoothed.add(new de.micromata.opengis.kml.v_2_2_0.Coordinate(smoothX, smoothY));
-				
-				prevX = smoothX;
-				prevY = smoothY;
+		for(String lang: new String[] { Converter.NL, Converter.FR, Converter.DE }) {
+			Optional<Property> prop = feature.getProperties(lang).stream().findFirst();
+			if (prop.isPresent()) {
+				String str = (String) prop.get().getValue();
+				if (! str.isEmpty()) {
+					if (builder.length() > 0) {
+						builder.append(" / ");
+					}
+					builder.append(str);
+				}
 			}
 		}
-		return smoothed;
+		return builder.toString();
 	}
 
+
 	/**
-	 * Create simple shaped KML places, which is the default.
+	 * Read the places from a shapefile, passing them to the consumer in batches.
 	 * 
-	 * @param kmlPlace KML place
-	 * @param geom shapefile geometry
+	 * @param indir shapefile input directory
+	 * @param name feature / shape file name
+	 * @param withZip only read places having a zip code, and prefix the name with the zip code
+	 * @param consumer function called for each batch of places, in Lambert 2008 coordinates
+	 * @throws IOException 
 	 */
-	private void createKmlShapeSimple(Placemark kmlPlace, Geometry geom) {
-		// simple case, which is the default
-		List smoothed = smoothedCoords(geom);
-		
-		if (smoothed.size() > 2) {
-			kmlPlace.createAndSetPolygon()
-				.createAndSetOuterBoundaryIs()
-				.createAndSetLinearRing()
-				.withCoordinates(smoothed);
-		} else {
-			LOG.warn("Simple polygon is too small, ignoring");
+	private void readPlaces(Path indir, String name, boolean withZip, PlaceBatch consumer) throws IOException {
+		SimpleFeatureCollection collection = getFeatures(indir.toFile(), name);
+
+		List<Place> places = new ArrayList<>(BATCH_SIZE);
+
+		LOG.info("Reading {}", name);
+		try (SimpleFeatureIterator features = collection.features()) {
+			while (features.hasNext()) {
+				SimpleFeature feature = features.next();
+				String zipcode = null;
+
+				if (withZip) {
+					// Get the ZIP code, if any
+					Optional<Property> propZip = feature.getProperties(Converter.ZIP).stream().findFirst();
+					if (! propZip.isPresent()) {
+						continue;
+					}
+					zipcode = (String) propZip.get().getValue();
+				}
+				String label = joinLocationNames(feature);
+				Geometry geom = (Geometry) feature.getDefaultGeometry();
+				// bounding box of the full resolution shape, for the level of detail regions
+				Envelope region = lod ? reprojector.reproject(geom.getEnvelopeInternal()) : null;
+
+				places.add(new Place(withZip ? zipcode + " " + label : label, zipcode, geom, region));
+				if (places.size() == BATCH_SIZE) {
+					consumer.accept(places);
+					places = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+		}
+		if (! places.isEmpty()) {
+			consumer.accept(places);
 		}
 	}
 
 	/**
-	 * Create complex shaped KML places, like Ixelles or Baarle-Hertog.
+	 * Read all the places from a shapefile, only once per shapefile.
 	 * 
-	 * @see https://en.wikipedia.org/wiki/Baarle-Hertog#/media/File:Baarle-Nassau_-_Baarle-Hertog-en.svg
+	 * @param indir shapefile input directory
+	 * @param name feature / shape file name
+	 * @param withZip only read places having a zip code, and prefix the name with the zip code
+	 * @return list of places, in Lambert 2008 coordinates
+	 * @throws IOException 
+	 */
+	private List<Place> readPlaces(Path indir, String name, boolean withZip) throws IOException {
+		List<Place> places = new ArrayList<>();
+		readPlaces(indir, name, withZip, places::addAll);
+		return places;
+	}
+
+	/**
+	 * Simplify the places and convert them to WGS84 coordinates.
+	 * The conversion is done in parallel batches, and only once per place.
 	 * 
-	 * @param kmlPlace KML place
-	 * @param geom shapefile geometry
+	 * @param places places in Lambert 2008 coordinates
+	 * @param simplifier simplifier
+	 * @return places in WGS84 coordinates, in the same order
+	 * @throws IOException 
 	 */
-	private void createKmlShapeComplex(Placemark kmlPlace, MultiPolygon geom) {
-		// complex shaped municipalities, like Ixelles
-		MultiGeometry kmlMulti = kmlPlace.createAndSetMultiGeometry();
-		int numPoly = geom.getNumGeometries();
+	private List<Place> project(List<Place> places, Simplifier simplifier) throws IOException {
+		List<Geometry> geoms = places.stream().map(Place::getGeometry).collect(Collectors.toList());
 
-		for (int i = 0; i < numPoly; i++) {
-			Geometry geometryN = geom.getGeometryN(i);
-					
-			if (geometryN instanceof Polygon) {
-				Polygon poly = (Polygon) geometryN;					
-				LineString extRing = poly.getExteriorRing();
-				List smoothed = smoothedCoords(extRing);
+		// simplify in Lambert 2008 coordinates, tolerance is in meters
+		LOG.debug("Simplifying {} shapes using {}", geoms.size(), simplifier.getEngine());
+		geoms = simplifier.simplify(geoms);
 
-				if (smoothed.size() > 2) {
-					de.micromata.opengis.kml.v_2_2_0.Polygon kmlPolygon = kmlMulti.createAndAddPolygon();
-				
-					kmlPolygon.createAndSetOuterBoundaryIs()
-								.createAndSetLinearRing()
-								.withCoordinates(smoothed);
+		// convert to GPS coordinates
+		LOG.debug("Reprojecting {} shapes", geoms.size());
+		List<Geometry> wgs84 = reprojector.reproject(geoms);
 
-					// Baarle-Hertog is _really_ complex
-					int numInt = poly.getNumInteriorRing();
-					for (int j = 0; j < numInt; j++) {
-						LineString inRing = poly.getInteriorRingN(j);
+		return withGeometries(places, wgs84);
+	}
 
-						smoothed = smoothedCoords(inRing);
-						if (smoothed.size() > 2) {
-							kmlPolygon.createAndAddInnerBoundaryIs()
-										.createAndSetLinearRing()
-										.withCoordinates(smoothed);
-						} else {
-							LOG.warn("Interior polygon ring is too small, ignoring");
-						}
-					}
-				} else {
-					LOG.warn("Exterior polygon ring is too small, ignoring");
-				}
+	/**
+	 * Copy the places with new geometries
+	 * 
+	 * @param places places
+	 * @param geoms geometries, in the same order
+	 * @return places with new geometries
+	 */
+	private static List<Place> withGeometries(List<Place> places, List<Geometry> geoms) {
+		List<Place> copy = new ArrayList<>(places.size());
+		for (int i = 0; i < places.size(); i++) {
+			Place place = places.get(i);
+			copy.add(new Place(place.getName(), place.getZipcode(), geoms.get(i), place.getRegion()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Extract the arcs shared by municipalities and municipal sections
+	 * 
+	 * @param municipalities municipalities
+	 * @param sections municipal sections
+	 * @return topology of the municipalities, followed by the sections
+	 */
+	private Topology buildTopology(List<Place> municipalities, List<Place> sections) {
+		List<Geometry> geoms = new ArrayList<>(municipalities.size() + sections.size());
+		municipalities.forEach(p -> geoms.add(p.getGeometry()));
+		sections.forEach(p -> geoms.add(p.getGeometry()));
+
+		Topology topology = new Topology(geoms);
+		LOG.info("Extracted {} arcs from {} shapes", topology.getArcs().size(), topology.size());
+		return topology;
+	}
+
+	/**
+	 * Simplify and reproject the arcs of the topology, and reassemble the shapes.
+	 * Each arc is processed only once, even when it is shared by several shapes.
+	 * 
+	 * @param topology topology of the municipalities, followed by the sections
+	 * @param municipalities municipalities
+	 * @param sections municipal sections
+	 * @param simplifier simplifier
+	 * @return places per layer, in WGS84 coordinates
+	 * @throws IOException 
+	 */
+	private List<List<Place>> projectTopology(Topology topology, List<Place> municipalities, List<Place> sections, 
+												Simplifier simplifier) throws IOException {
+		List<Coordinate[]> arcs = topology.getArcs();
+
+		// simplify in Lambert 2008 coordinates, tolerance is in meters
+		LOG.info("Simplifying {} arcs using {}", arcs.size(), simplifier.getEngine());
+		arcs = simplifier.simplifyArcs(arcs, topology.getMinInterior());
+
+		// convert to GPS coordinates
+		LOG.info("Reprojecting {} arcs", arcs.size());
+		List<Geometry> shapes = topology.getShapes(reprojector.reprojectArcs(arcs));
+
+		int split = municipalities.size();
+		return splitLayers(withGeometries(municipalities, shapes.subList(0, split)), 
+							withGeometries(sections, shapes.subList(split, shapes.size())));
+	}
+
+	/**
+	 * Split the municipal sections into nine groups, based on the first digit of the zip code.
+	 * This is done in one pass, instead of filtering all the sections for each group.
+	 * 
+	 * @param sections municipal sections
+	 * @return list of nine groups, the first one for zip codes starting with 1
+	 */
+	private List<List<Place>> partitionZipCodes(List<Place> sections) {
+		List<List<Place>> parts = new ArrayList<>(9);
+		for (int i = 0; i < 9; i++) {
+			parts.add(new ArrayList<>());
+		}
+		for (Place section: sections) {
+			int layer = zipLayer(section.getZipcode());
+			if (layer > 0) {
+				parts.get(layer - 1).add(section);
 			} else {
-				LOG.warn("Expected polygon in shapefile");
+				LOG.warn("Unexpected zip code {}, ignoring", section.getZipcode());
 			}
 		}
+		return parts;
 	}
 
 	/**
-	 * Add geo coordinates and labels to KML place.
-	 * The AdminVector shapefile uses multipolygons even for simple shapes,
-	 * and of course also for very complex shapes.
+	 * Get the layer of a municipal section, based on the first digit of the zip code
 	 * 
-	 * @param place KML placemark
-	 * @param feature shapefile feature
-	 * @param geom shapefile geometry
+	 * @param zipcode zip code
+	 * @return layer number (1 to 9), or -1 for an unexpected zip code
 	 */
-	private void createKmlShape(Placemark place, SimpleFeature feature, Geometry geom) {			
-		Object obj = feature.getDefaultGeometry();
-		
-		if (obj instanceof MultiPolygon) {
-			MultiPolygon mp = (MultiPolygon) geom;
-			// check if the region is one "simple" shape
-			int numPoly = mp.getNumGeometries();
-			
-			if (numPoly == 1) {
-				createKmlShapeSimple(place, mp);	
-			} else if (numPoly > 1) {
-				createKmlShapeComplex(place, mp);
-			}
-		} else {
-			LOG.warn("Expected multipolygon in shapefile");
+	private static int zipLayer(String zipcode) {
+		char first = zipcode.isEmpty() ? ' ' : zipcode.charAt(0);
+		return (first >= '1' && first <= '9') ? first - '0' : -1;
+	}
+
+	/**
+	 * Get the places per layer: the municipalities, followed by the nine groups of municipal sections
+	 * 
+	 * @param municipalities municipalities
+	 * @param sections municipal sections
+	 * @return list of ten layers
+	 */
+	private List<List<Place>> splitLayers(List<Place> municipalities, List<Place> sections) {
+		List<List<Place>> layers = new ArrayList<>(10);
+		layers.add(municipalities);
+		layers.addAll(partitionZipCodes(sections));
+		return layers;
+	}
+
+	/**
+	 * Get the name of a layer
+	 * 
+	 * @param layer layer number
+	 * @return name
+	 */
+	private static String layerName(int layer) {
+		return (layer == 0) ? "municipalities" : "zipcodes-" + layer;
+	}
+
+	/**
+	 * Get the name of the KML folder of a layer
+	 * 
+	 * @param layer layer number
+	 * @return folder name
+	 */
+	private static String folderName(int layer) {
+		return (layer == 0) ? "MUNICIPALITIES" : "POST";
+	}
+
+	/**
+	 * Get the name of the KML file of a layer
+	 * 
+	 * @param layer layer number
+	 * @param level level of detail, or -1
+	 * @param tile tile number within the level of detail
+	 * @return file name
+	 */
+	private static String fileName(int layer, int level, int tile) {
+		return layerName(layer) + ((level < 0) ? "" : "_lod" + level + "_" + tile) + ".kml";
+	}
+
+	/**
+	 * Get the region covering all the places of a layer
+	 * 
+	 * @param places places
+	 * @return region in WGS84 coordinates
+	 */
+	private static Envelope extent(List<Place> places) {
+		Envelope region = new Envelope();
+		for (Place place: places) {
+			region.expandToInclude(place.getRegion());
 		}
-	}				
+		return region;
+	}
 
 	/**
-	 * Join the names of the location into one string
+	 * Get the tile of a place within a level of detail.
+	 * Each level splits the layer into a grid of 2^level by 2^level tiles, 
+	 * and the place belongs to the tile containing the center of its region.
 	 * 
-	 * @param feature
-	 * @return 
+	 * @param extent region of the layer
+	 * @param region region of the place
+	 * @param level level of detail
+	 * @return tile number
 	 */
-	private String joinLocationNames(SimpleFeature feature) {
-		StringBuilder builder = new StringBuilder();
-		
-		for(String lang: new String[] { Converter.NL, Converter.FR, Converter.DE }) {
-			Optional<Property> prop = feature.getProperties(lang).stream().findFirst();
-			if (prop.isPresent()) {
-				String str = (String) prop.get().getValue();
-				if (! str.isEmpty()) {
-					if (builder.length() > 0) {
-						builder.append(" / ");
-					}
-					builder.append(str);
-				}
-			}
+	private static int tileOf(Envelope extent, Envelope region, int level) {
+		int n = 1 << level;
+		double x = (region.getMinX() + region.getMaxX()) / 2;
+		double y = (region.getMinY() + region.getMaxY()) / 2;
+		int col = (int) ((x - extent.getMinX()) / (extent.getMaxX() - extent.getMinX()) * n);
+		int row = (int) ((y - extent.getMinY()) / (extent.getMaxY() - extent.getMinY()) * n);
+		return Math.max(0, Math.min(n - 1, row)) * n + Math.max(0, Math.min(n - 1, col));
+	}
+
+	/**
+	 * Split the places of a layer into tiles
+	 * 
+	 * @param places places of a layer
+	 * @param level level of detail
+	 * @return places per tile, some tiles may be empty
+	 */
+	private static List<List<Place>> tiles(List<Place> places, int level) {
+		int n = 1 << level;
+		List<List<Place>> tiles = new ArrayList<>(n * n);
+		for (int i = 0; i < n * n; i++) {
+			tiles.add(new ArrayList<>());
 		}
-		return builder.toString();
+		Envelope extent = extent(places);
+		for (Place place: places) {
+			tiles.get(tileOf(extent, place.getRegion(), level)).add(place);
+		}
+		return tiles;
 	}
 
-	
-	private void addKmlShape(Placemark kmlPlace, SimpleFeature feature) throws IOException {
-		try {
-			// convert to GPS coordinates
-			Geometry lambert08 = (Geometry) feature.getDefaultGeometry();			
-			Geometry wgs84 = JTS.toGeographic(lambert08, LAM08);
-			createKmlShape(kmlPlace, feature, wgs84);
-		} catch (MismatchedDimensionException|TransformException ex) {
-			throw new IOException(ex);
+	/**
+	 * Get the number of decimal digits of the coordinates in the KML files.
+	 * Only the Douglas-Peucker engines and the levels of detail use the tolerance.
+	 * 
+	 * @param tolerance tolerance in meters
+	 * @return number of decimal digits
+	 */
+	private int decimals(double tolerance) {
+		if (!lod && engine == Simplifier.Engine.NONE) {
+			return KmlWriter.ALL_DECIMALS;
 		}
+		if (!lod && engine == Simplifier.Engine.NAIVE) {
+			return KmlWriter.NAIVE_DECIMALS;
+		}
+		return KmlWriter.decimals(tolerance);
 	}
 
 	/**
-	 * Add zipcodes folder from shapefile
+	 * Open a KML file for writing, or a new entry in the KMZ file when writing KMZ
 	 * 
-	 * @param indir shapefile input dir
-	 * @param kmlDoc KML document
-	 * @param startCode starting number
+	 * @param outfile KML output file
+	 * @param decimals number of decimal digits of the coordinates
+	 * @return streaming KML writer
 	 * @throws IOException 
 	 */
-	protected void addZipCodes(Path indir, Document kmlDoc, String startCode) throws IOException {
-		SimpleFeatureCollection collection = getFeatures(indir.toFile(), Converter.AD_1);
-		
-		Folder post = kmlDoc.createAndAddFolder().withName("POST");
-		
-		try (SimpleFeatureIterator features = collection.features()) {
-			while (features.hasNext()) {
-				SimpleFeature feature = features.next();
+	private KmlWriter openKml(Path outfile, int decimals) throws IOException {
+		OutputStream out;
+		if (kmz != null) {
+			LOG.info("Adding {} to KMZ", outfile.getFileName());
+			out = kmz.newEntry(outfile.getFileName().toString());
+		} else {
+			LOG.info("Opening {}", outfile);
+			out = Files.newOutputStream(outfile, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
+		}
+		return new KmlWriter(out, isNaive(), decimals);
+	}
 
-				// Get the ZIP code, if any
-				Optional<Property> propZip = feature.getProperties(Converter.ZIP).stream().findFirst();
-				if (propZip.isPresent()) {
-					String zipcode = (String) propZip.get().getValue();
-					
-					if (zipcode.startsWith(startCode)) {
-						String name = joinLocationNames(feature);
-
-						Placemark place = post.createAndAddPlacemark();
-						place.withStyleUrl("#style");
-						place.setName(zipcode + " " + name);
-							
-						addKmlShape(place, feature);
-					}
-				}
-			}
+	/**
+	 * Check if the KML writer has to remove points close to the previous one
+	 * 
+	 * @return true for naive simplification
+	 */
+	private boolean isNaive() {
+		return !lod && engine == Simplifier.Engine.NAIVE;
+	}
+
+	/**
+	 * Write the places as placemarks
+	 * 
+	 * @param kml KML writer
+	 * @param places municipalities or municipal sections
+	 * @param minLodPixels minimum size on screen (level of detail)
+	 * @param maxLodPixels maximum size on screen (level of detail), or -1
+	 * @throws IOException 
+	 */
+	private static void writePlaces(KmlWriter kml, List<Place> places, int minLodPixels, int maxLodPixels) 
+																								throws IOException {
+		for (Place place: places) {
+			kml.writePlacemark(place.getName(), "#style", place.getGeometry(), 
+								place.getRegion(), minLodPixels, maxLodPixels);
 		}
 	}
 
 	/**
+	 * Open the KML file of a layer, and start its folder
 	 * 
-	 * @param indir shapefile input directory
-	 * @param outdir KML output directory
-	 * @param startCode starting code
+	 * @param layer layer number
+	 * @param outfile KML output file
+	 * @param decimals number of decimal digits of the coordinates
+	 * @return KML writer
+	 * @throws IOException 
 	 */
-	private void convertZipCodes(Path indir, Path outfile, String startCode) throws IOException {	
-		// start KML
-		Kml kml = KmlFactory.createKml();
-		Document doc = kml.createAndSetDocument();
-		
-		// Create simple style info
-		Style style = doc.createAndAddStyle().withId("style");
-		style.createAndSetLineStyle().withColor("ff0000ff");
-		style.createAndSetPolyStyle().withFill(Boolean.FALSE);
+	private KmlWriter openLayer(int layer, Path outfile, int decimals) throws IOException {
+		return startLayer(openKml(outfile, decimals), layer);
+	}
 
-		LOG.info("Opening {}", outfile);
+	/**
+	 * Write the style and start the folder of a layer
+	 * 
+	 * @param kml KML writer
+	 * @param layer layer number
+	 * @return KML writer
+	 * @throws IOException 
+	 */
+	private static KmlWriter startLayer(KmlWriter kml, int layer) throws IOException {
+		// Create simple style info
+		kml.writeStyle("style", "ff0000ff");
+		kml.startFolder(folderName(layer));
+		return kml;
+	}
 
-		try (Writer w = Files.newBufferedWriter(outfile, StandardCharsets.UTF_8,
-														StandardOpenOption.TRUNCATE_EXISTING, 
-														StandardOpenOption.CREATE)) {
-			addZipCodes(indir, doc, startCode);
+	/**
+	 * Write places to a KML file, one placemark per place.
+	 * Each placemark is written as soon as its coordinates are processed.
+	 * 
+	 * @param places municipalities or municipal sections
+	 * @param layer layer number
+	 * @param outfile KML output file
+	 * @param decimals number of decimal digits of the coordinates
+	 * @param minLodPixels minimum size on screen (level of detail)
+	 * @param maxLodPixels maximum size on screen (level of detail), or -1
+	 * @throws IOException 
+	 */
+	private void convertPlaces(List<Place> places, int layer, Path outfile, int decimals, 
+								int minLodPixels, int maxLodPixels) throws IOException {
+		KmlWriter kml = openLayer(layer, outfile, decimals);
+		try {
 			LOG.info("Writing to {}", outfile);
-			kml.marshal(w);
+			writePlaces(kml, places, minLodPixels, maxLodPixels);
+			kml.endFolder();
+		} catch (IOException | RuntimeException ex) {
+			// do not leave a file that looks complete
+			kml.abort();
+			throw ex;
 		}
+		kml.close();
 	}
 
+	/**
+	 * Write places to a KML document in memory
+	 * 
+	 * @param places municipalities or municipal sections
+	 * @param layer layer number
+	 * @param decimals number of decimal digits of the coordinates
+	 * @param minLodPixels minimum size on screen (level of detail)
+	 * @param maxLodPixels maximum size on screen (level of detail), or -1
+	 * @return KML document
+	 * @throws IOException 
+	 */
+	private byte[] renderPlaces(List<Place> places, int layer, int decimals, int minLodPixels, int maxLodPixels) 
+																								throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (KmlWriter kml = startLayer(new KmlWriter(out, isNaive(), decimals), layer)) {
+			writePlaces(kml, places, minLodPixels, maxLodPixels);
+			kml.endFolder();
+		}
+		return out.toByteArray();
+	}
 
 	/**
-	 * Add municipalities folder from shapefile
+	 * Simplify, reproject and write the places in batches, while reading the shapefiles.
+	 * Only one batch of places is kept in memory, which is possible when each shape is simplified on its own.
+	 * The batch is written to the KML files of the layers concurrently.
 	 * 
-	 * @param indir
-	 * @param kmlDoc KML document
+	 * @param indir shapefile input directory
+	 * @param outdir output directory
+	 * @param simplifier simplifier
 	 * @throws IOException 
 	 */
-	protected void addMunicipalities(Path indir, Document kmlDoc) throws IOException {
-		SimpleFeatureCollection collection = getFeatures(indir.toFile(), Converter.AD_2);
-		
-		Folder post = kmlDoc.createAndAddFolder().withName("MUNICIPALITIES");
-		
-		try (SimpleFeatureIterator features = collection.features()) {
-			while (features.hasNext()) {
-				SimpleFeature feature = features.next();
+	private void streamLayers(Path indir, Path outdir, Simplifier simplifier) throws IOException {
+		KmlWriter[] writers = new KmlWriter[LAYERS];
+		try {
+			for (int layer = 0; layer < LAYERS; layer++) {
+				writers[layer] = openLayer(layer, Paths.get(outdir.toString(), fileName(layer, -1, 0)), 
+											decimals(tolerance));
+			}
+			readPlaces(indir, Converter.AD_2, false, 
+						batch -> writePlaces(writers[0], project(batch, simplifier), 0, -1));
+			readPlaces(indir, Converter.AD_1, true, batch -> {
+				List<List<Place>> parts = partitionZipCodes(project(batch, simplifier));
+				List<Callable<Void>> tasks = new ArrayList<>();
+				for (int i = 0; i < parts.size(); i++) {
+					KmlWriter kml = writers[i + 1];
+					List<Place> places = parts.get(i);
+					tasks.add(() -> {
+						writePlaces(kml, places, 0, -1);
+						return null;
+					});
+				}
+				Parallel.invokeAll(threads, tasks);
+			});
+			for (KmlWriter kml: writers) {
+				kml.endFolder();
+			}
+		} catch (IOException | RuntimeException ex) {
+			// do not leave files that look complete
+			for (KmlWriter kml: writers) {
+				if (kml != null) {
+					kml.abort();
+				}
+			}
+			throw ex;
+		}
+		IOException first = null;
+		for (KmlWriter kml: writers) {
+			try {
+				kml.close();
+			} catch (IOException ioe) {
+				first = (first == null) ? ioe : first;
+			}
+		}
+		if (first != null) {
+			throw first;
+		}
+	}
 
-				String name = joinLocationNames(feature);
+	/**
+	 * Simplify, reproject and write the places of one layer in batches, while reading the shapefile.
+	 * Used when writing KMZ, as the entries of a zip file are written one after the other:
+	 * the shapefile of the municipal sections is read again for each group of zip codes.
+	 * 
+	 * @param indir shapefile input directory
+	 * @param outdir output directory
+	 * @param simplifier simplifier
+	 * @param layer layer number
+	 * @throws IOException 
+	 */
+	private void streamLayer(Path indir, Path outdir, Simplifier simplifier, int layer) throws IOException {
+		Path out = Paths.get(outdir.toString(), fileName(layer, -1, 0));
+		KmlWriter kml = openLayer(layer, out, decimals(tolerance));
+		try {
+			LOG.info("Writing to {}", out);
+			if (layer == 0) {
+				readPlaces(indir, Converter.AD_2, false, 
+							batch -> writePlaces(kml, project(batch, simplifier), 0, -1));
+			} else {
+				readPlaces(indir, Converter.AD_1, true, batch -> {
+					List<Place> places = new ArrayList<>();
+					for (Place place: batch) {
+						int zipLayer = zipLayer(place.getZipcode());
+						if (zipLayer == layer) {
+							places.add(place);
+						} else if (zipLayer < 0 && layer == 1) {
+							LOG.warn("Unexpected zip code {}, ignoring", place.getZipcode());
+						}
+					}
+					writePlaces(kml, project(places, simplifier), 0, -1);
+				});
+			}
+			kml.endFolder();
+		} catch (IOException | RuntimeException ex) {
+			kml.abort();
+			throw ex;
+		}
+		kml.close();
+	}
 
-				Placemark place = post.createAndAddPlacemark();
-				place.withStyleUrl("#style");
-				place.setName(name);
-							
-				addKmlShape(place, feature);
+	/**
+	 * Write the root KML file, linking to the KML files of all layers.
+	 * When using levels of detail, each level of a layer is split into tiles, 
+	 * and each tile is only loaded when the tile is large enough on screen.
+	 * So the detailed shapes are only loaded for the visible parts of the layer.
+	 * 
+	 * @param outdir output directory
+	 * @param layers places per layer, only used for the levels of detail
+	 * @param levels number of levels of detail
+	 * @throws IOException 
+	 */
+	private void writeRoot(Path outdir, List<List<Place>> layers, int levels) throws IOException {
+		Path root = Paths.get(outdir.toString(), "doc.kml");
+		KmlWriter kml = openKml(root, 0);
+		try {
+			LOG.info("Writing to {}", root);
+			for (int layer = 0; layer < LAYERS; layer++) {
+				if (! lod) {
+					kml.writeNetworkLink(fileName(layer, -1, 0));
+					continue;
+				}
+				kml.startFolder(layerName(layer));
+				for (int level = 0; level < levels; level++) {
+					List<List<Place>> tiles = tiles(layers.get(layer), level);
+					for (int tile = 0; tile < tiles.size(); tile++) {
+						if (tiles.get(tile).isEmpty()) {
+							continue;
+						}
+						// the placemarks have their own regions, hiding them when zooming in on a more detailed level
+						kml.writeNetworkLink(fileName(layer, level, tile), extent(tiles.get(tile)), 
+												LOD_PIXELS[level], -1);
+					}
+				}
+				kml.endFolder();
 			}
+		} catch (IOException | RuntimeException ex) {
+			kml.abort();
+			throw ex;
 		}
+		kml.close();
 	}
 
 	/**
+	 * Write the KML files of all layers of one level of detail, one file per tile.
+	 * The files are written concurrently.
+	 * When writing KMZ, the entries are written one after the other: the (small) tiles are converted
+	 * concurrently, a few at a time, and then added to the KMZ in order.
 	 * 
-	 * @param indir
-	 * @param outdir
-	 * @throws IOException
+	 * @param layers places per layer, in WGS84 coordinates
+	 * @param level level of detail, or -1
+	 * @param tolerance tolerance in meters
+	 * @param outdir output directory
+	 * @throws IOException 
 	 */
-	private void convertMunicipalities(Path indir, Path outfile) throws IOException {	
-		// start KML
-		Kml kml = KmlFactory.createKml();
-		Document doc = kml.createAndSetDocument();
-		
-		// Create simple style info
-		Style style = doc.createAndAddStyle().withId("style");
-		style.createAndSetLineStyle().withColor("ff0000ff");
-		style.createAndSetPolyStyle().withFill(Boolean.FALSE);
+	private void writeLevel(List<List<Place>> layers, int level, double tolerance, Path outdir) 
+																							throws IOException {
+		int minLodPixels = lod ? LOD_PIXELS[level] : 0;
+		int maxLodPixels = (lod && level < LOD_PIXELS.length - 1) ? LOD_PIXELS[level + 1] : -1;
+		int decimals = decimals(tolerance);
+
+		List<Integer> fileLayers = new ArrayList<>();
+		List<List<Place>> filePlaces = new ArrayList<>();
+		List<Path> files = new ArrayList<>();
+		for (int layer = 0; layer < layers.size(); layer++) {
+			List<List<Place>> tiles = lod ? tiles(layers.get(layer), level) : List.of(layers.get(layer));
+			for (int tile = 0; tile < tiles.size(); tile++) {
+				if (lod && tiles.get(tile).isEmpty()) {
+					continue;
+				}
+				fileLayers.add(layer);
+				filePlaces.add(tiles.get(tile));
+				files.add(Paths.get(outdir.toString(), fileName(layer, level, tile)));
+			}
+		}
 
-		LOG.info("Opening {}", outfile);
+		if (kmz != null && !lod) {
+			// complete layers, written straight into the KMZ
+			for (int i = 0; i < files.size(); i++) {
+				convertPlaces(filePlaces.get(i), fileLayers.get(i), files.get(i), decimals, minLodPixels, maxLodPixels);
+			}
+			return;
+		}
 
-		try (Writer w = Files.newBufferedWriter(outfile, StandardCharsets.UTF_8,
-														StandardOpenOption.TRUNCATE_EXISTING, 
-														StandardOpenOption.CREATE)) {
-			addMunicipalities(indir, doc);
-			LOG.info("Writing to {}", outfile);
-			kml.marshal(w);
+		int step = (kmz != null) ? threads : files.size();
+		for (int start = 0; start < files.size(); start += step) {
+			int end = Math.min(start + step, files.size());
+			byte[][] rendered = new byte[end - start][];
+
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (int i = start; i < end; i++) {
+				int f = i;
+				tasks.add(() -> {
+					if (kmz == null) {
+						convertPlaces(filePlaces.get(f), fileLayers.get(f), files.get(f), 
+										decimals, minLodPixels, maxLodPixels);
+					} else {
+						rendered[f - start] = renderPlaces(filePlaces.get(f), fileLayers.get(f), 
+															decimals, minLodPixels, maxLodPixels);
+					}
+					return null;
+				});
+			}
+			Parallel.invokeAll(threads, tasks);
+
+			if (kmz != null) {
+				for (int i = start; i < end; i++) {
+					LOG.info("Adding {} to KMZ", files.get(i).getFileName());
+					kmz.addEntry(files.get(i).getFileName().toString(), rendered[i - start]);
+				}
+			}
 		}
 	}
-	
+
+	/**
+	 * Convert the shapefiles when all shapes are needed at once, 
+	 * either for the topology or for the levels of detail.
+	 * The levels are processed one after the other.
+	 * 
+	 * @param indir shapefile input directory
+	 * @param outdir output directory
+	 * @throws IOException 
+	 */
+	private void convertTopology(Path indir, Path outdir) throws IOException {
+		// read each shapefile only once
+		List<Place> municipalities = readPlaces(indir, Converter.AD_2, false);
+		List<Place> sections = readPlaces(indir, Converter.AD_1, true);
+
+		double[] tolerances = lod ? LOD_TOLERANCE : new double[] { tolerance };
+		// levels of detail always need a real simplification
+		Simplifier.Engine levelEngine = (!lod || engine == Simplifier.Engine.DOUGLAS_PEUCKER) 
+											? engine : Simplifier.Engine.TOPOLOGY_PRESERVING;
+
+		// shared boundaries are only processed once, except when simplifying each shape on its own
+		Topology topology = (levelEngine != Simplifier.Engine.DOUGLAS_PEUCKER) 
+								? buildTopology(municipalities, sections) : null;
+
+		// root file first, as the first KML file in a KMZ is the one that will be opened
+		writeRoot(outdir, splitLayers(municipalities, sections), tolerances.length);
+
+		// simplify, reproject and write one level at a time, so only one simplified copy is kept in memory
+		for (int level = 0; level < tolerances.length; level++) {
+			Simplifier simplifier = new Simplifier(levelEngine, tolerances[level], threads);
+			List<List<Place>> layers = (topology != null) 
+									? projectTopology(topology, municipalities, sections, simplifier)
+									: splitLayers(project(municipalities, simplifier), project(sections, simplifier));
+			writeLevel(layers, lod ? level : -1, tolerances[level], outdir);
+		}
+	}
+
 	@Override
 	public void convert(Path indir, Path outdir) throws IOException {
 		initCRS();
+		reprojector = new Reprojector(LAM08, DefaultGeographicCRS.WGS84, threads);
 
-		Kml kml = KmlFactory.createKml();
-		Document doc = kml.createAndSetDocument();
-		
-		String mstr =  "municipalities.kml";
-		Path mout = Paths.get(outdir.toString(), mstr);
-		convertMunicipalities(indir, mout);
-		doc.createAndAddNetworkLink().createAndSetLink().withHref(mstr);
-		
-		for (int code = 1; code <= 9; code++) {
-			String zstr = "zipcodes-" + code + ".kml";
-			Path zout = Paths.get(outdir.toString(), zstr);
-			convertZipCodes(indir, zout, String.valueOf(code));
-			doc.createAndAddNetworkLink().createAndSetLink().withHref(zstr);
+		if (kmzLevel >= 0) {
+			Path out = Paths.get(outdir.toString(), KMZ_FILE);
+			LOG.info("Writing KMZ {}", out);
+			kmz = new KmzWriter(out, kmzLevel);
 		}
-		
-		Path root = Paths.get(outdir.toString(), "doc.kml");
-		try (Writer w = Files.newBufferedWriter(root, StandardCharsets.UTF_8,
-														StandardOpenOption.TRUNCATE_EXISTING, 
-														StandardOpenOption.CREATE)) {
-			LOG.info("Writing to {}", root);
-			kml.marshal(w);
+		boolean done = false;
+		try {
+			if (!lod && engine != Simplifier.Engine.TOPOLOGY_PRESERVING) {
+				// root file first, as the first KML file in a KMZ is the one that will be opened
+				writeRoot(outdir, null, 1);
+				// each shape is processed on its own, so there is no need to keep all of them in memory
+				Simplifier simplifier = new Simplifier(engine, tolerance, threads);
+				if (kmz == null) {
+					streamLayers(indir, outdir, simplifier);
+				} else {
+					for (int layer = 0; layer < LAYERS; layer++) {
+						streamLayer(indir, outdir, simplifier, layer);
+					}
+				}
+			} else {
+				convertTopology(indir, outdir);
+			}
+			done = true;
+		} finally {
+			if (kmz != null) {
+				// an incomplete KMZ file is deleted
+				if (done) {
+					kmz.close();
+				} else {
+					kmz.abort();
+				}
+				kmz = null;
+			}
 		}
 	}
 }
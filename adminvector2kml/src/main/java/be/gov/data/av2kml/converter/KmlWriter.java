@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming KML writer.
+ * Placemarks are written immediately, and coordinates are written straight from the geometry,
+ * so the memory use does not depend on the size of the KML file.
+ * 
+ * @author Bart Hanssens
+ */
+public class KmlWriter implements Closeable {
+	private final static Logger LOG = LoggerFactory.getLogger(KmlWriter.class);
+
+	private final static String NS = "http://www.opengis.net/kml/2.2";
+	private final static XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+	/** decimal digits keeping all points, roughly 0.1 millimeter */
+	public final static int ALL_DECIMALS = 9;
+	// one degree of latitude in meters
+	private final static double DEGREE = 111_320.0;
+	// naive simplification, remove points that are very close (in degrees) to the previous one
+	private final static double MIN_DELTA = 0.0004;
+	/** decimal digits for the naive simplification, more digits are meaningless next to MIN_DELTA */
+	public final static int NAIVE_DECIMALS = (int) Math.ceil(-Math.log10(MIN_DELTA));
+
+	private final OutputStream out;
+	private final Writer w;
+	private final XMLStreamWriter xml;
+	private final boolean naive;
+	private final int decimals;
+	private final long scale;
+
+	// coordinates of one ring
+	private char[] buf = new char[16 * 1024];
+	private int len;
+	private int points;
+	private boolean closed = false;
+
+	/**
+	 * Write a simple element with text content
+	 * 
+	 * @param name element name
+	 * @param value text
+	 * @throws XMLStreamException 
+	 */
+	private void writeElement(String name, String value) throws XMLStreamException {
+		xml.writeStartElement(name);
+		xml.writeCharacters(value);
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Write a style for lines and (unfilled) polygons
+	 * 
+	 * @param id style ID
+	 * @param lineColor line color (aabbggrr)
+	 * @throws IOException 
+	 */
+	public void writeStyle(String id, String lineColor) throws IOException {
+		try {
+			xml.writeStartElement("Style");
+			xml.writeAttribute("id", id);
+			xml.writeStartElement("LineStyle");
+			writeElement("color", lineColor);
+			xml.writeEndElement();
+			xml.writeStartElement("PolyStyle");
+			writeElement("fill", "0");
+			xml.writeEndElement();
+			xml.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Start a folder
+	 * 
+	 * @param name folder name
+	 * @throws IOException 
+	 */
+	public void startFolder(String name) throws IOException {
+		try {
+			xml.writeStartElement("Folder");
+			writeElement("name", name);
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * End a folder
+	 * 
+	 * @throws IOException 
+	 */
+	public void endFolder() throws IOException {
+		try {
+			xml.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Write a region with level of detail, so the feature is only shown (or loaded) 
+	 * when the region has a certain size on screen
+	 * 
+	 * @param region bounding box in WGS84 coordinates, or null
+	 * @param minLodPixels minimum size in pixels
+	 * @param maxLodPixels maximum size in pixels, or -1
+	 * @throws XMLStreamException 
+	 */
+	private void writeRegion(Envelope region, int minLodPixels, int maxLodPixels) throws XMLStreamException {
+		if (region == null || region.isNull()) {
+			return;
+		}
+		xml.writeStartElement("Region");
+		xml.writeStartElement("LatLonAltBox");
+		writeElement("north", Double.toString(region.getMaxY()));
+		writeElement("south", Double.toString(region.getMinY()));
+		writeElement("east", Double.toString(region.getMaxX()));
+		writeElement("west", Double.toString(region.getMinX()));
+		xml.writeEndElement();
+		xml.writeStartElement("Lod");
+		writeElement("minLodPixels", Integer.toString(minLodPixels));
+		writeElement("maxLodPixels", Integer.toString(maxLodPixels));
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Write a network link to another KML file
+	 * 
+	 * @param href location of the KML file
+	 * @throws IOException 
+	 */
+	public void writeNetworkLink(String href) throws IOException {
+		writeNetworkLink(href, null, 0, -1);
+	}
+
+	/**
+	 * Write a network link to another KML file, which is only loaded when the region is large enough on screen
+	 * 
+	 * @param href location of the KML file
+	 * @param region bounding box in WGS84 coordinates, or null
+	 * @param minLodPixels minimum size in pixels
+	 * @param maxLodPixels maximum size in pixels, or -1
+	 * @throws IOException 
+	 */
+	public void writeNetworkLink(String href, Envelope region, int minLodPixels, int maxLodPixels) 
+																						throws IOException {
+		try {
+			xml.writeStartElement("NetworkLink");
+			writeRegion(region, minLodPixels, maxLodPixels);
+			xml.writeStartElement("Link");
+			writeElement("href", href);
+			xml.writeEndElement();
+			xml.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Append a rounded coordinate to the buffer, without trailing zeros
+	 * 
+	 * @param rounded coordinate multiplied by scale and rounded
+	 */
+	private void appendCoordinate(long rounded) {
+		if (rounded < 0) {
+			buf[len++] = '-';
+			rounded = -rounded;
+		}
+		long whole = rounded / scale;
+		long frac = rounded % scale;
+
+		// integer part
+		int start = len;
+		do {
+			buf[len++] = (char) ('0' + whole % 10);
+			whole /= 10;
+		} while (whole > 0);
+		for (int i = start, j = len - 1; i < j; i++, j--) {
+			char c = buf[i];
+			buf[i] = buf[j];
+			buf[j] = c;
+		}
+		// fraction, if any
+		if (frac > 0) {
+			buf[len++] = '.';
+			for (long div = scale / 10; div > 0 && frac > 0; div /= 10) {
+				buf[len++] = (char) ('0' + frac / div);
+				frac %= div;
+			}
+		}
+	}
+
+	/**
+	 * Simplify and round the coordinates of a ring into the buffer
+	 * 
+	 * @param ring ring
+	 * @return number of points in the buffer
+	 */
+	private int bufferRing(LineString ring) {
+		CoordinateSequence seq = ring.getCoordinateSequence();
+		len = 0;
+		points = 0;
+
+		double prevX = 0.0;
+		double prevY = 0.0;
+		long prevRoundX = Long.MIN_VALUE;
+		long prevRoundY = Long.MIN_VALUE;
+
+		int last = seq.size() - 1;
+		for (int p = 0; p <= last; p++) {
+			double x = seq.getX(p);
+			double y = seq.getY(p);
+			// the first and the closing point are always kept, so the ring stays closed
+			if (naive && points > 0 && p < last 
+					&& Math.abs(x - prevX) <= MIN_DELTA && Math.abs(y - prevY) <= MIN_DELTA) {
+				continue;
+			}
+			long roundX = Math.round(x * scale);
+			long roundY = Math.round(y * scale);
+			// skip points that are the same as the previous one after rounding, unless all points are kept
+			if (decimals < ALL_DECIMALS && roundX == prevRoundX && roundY == prevRoundY) {
+				continue;
+			}
+
+			// 2 x (sign, 20 digits, dot, decimals) plus separators
+			if (len + 2 * (23 + decimals) > buf.length) {
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			if (points > 0) {
+				buf[len++] = ' ';
+			}
+			appendCoordinate(roundX);
+			buf[len++] = ',';
+			appendCoordinate(roundY);
+			points++;
+
+			prevX = (double) roundX / scale;
+			prevY = (double) roundY / scale;
+			prevRoundX = roundX;
+			prevRoundY = roundY;
+		}
+		return points;
+	}
+
+	/**
+	 * Get the number of decimal digits for a simplification tolerance, 
+	 * so the rounding error is at most a tenth of the tolerance
+	 * 
+	 * @param tolerance tolerance in meters
+	 * @return number of decimal digits of the coordinates in degrees
+	 */
+	public static int decimals(double tolerance) {
+		if (!(tolerance > 0)) {
+			return ALL_DECIMALS;
+		}
+		int digits = (int) Math.ceil(Math.log10(10 * DEGREE / tolerance));
+		return Math.max(0, Math.min(ALL_DECIMALS, digits));
+	}
+
+	/**
+	 * Write the buffered coordinates as a linear ring
+	 * 
+	 * @param boundary outerBoundaryIs or innerBoundaryIs
+	 * @throws XMLStreamException 
+	 */
+	private void writeRing(String boundary) throws XMLStreamException {
+		xml.writeStartElement(boundary);
+		xml.writeStartElement("LinearRing");
+		xml.writeStartElement("coordinates");
+		xml.writeCharacters(buf, 0, len);
+		xml.writeEndElement();
+		xml.writeEndElement();
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Write a polygon, including its interior rings (e.g. Baarle-Hertog)
+	 * 
+	 * @see https://en.wikipedia.org/wiki/Baarle-Hertog#/media/File:Baarle-Nassau_-_Baarle-Hertog-en.svg
+	 * 
+	 * @param poly polygon
+	 * @throws XMLStreamException 
+	 */
+	private void writePolygon(Polygon poly) throws XMLStreamException {
+		if (bufferRing(poly.getExteriorRing()) <= 2) {
+			LOG.warn("Exterior polygon ring is too small, ignoring");
+			return;
+		}
+		xml.writeStartElement("Polygon");
+		writeRing("outerBoundaryIs");
+
+		for (int j = 0; j < poly.getNumInteriorRing(); j++) {
+			if (bufferRing(poly.getInteriorRingN(j)) > 2) {
+				writeRing("innerBoundaryIs");
+			} else {
+				LOG.warn("Interior polygon ring is too small, ignoring");
+			}
+		}
+		xml.writeEndElement();
+	}
+
+	/**
+	 * Write the geometry of a placemark.
+	 * The AdminVector shapefile uses multipolygons even for simple shapes,
+	 * and of course also for very complex shapes (like Ixelles).
+	 * 
+	 * @param geom geometry in WGS84 coordinates
+	 * @throws XMLStreamException 
+	 */
+	private void writeGeometry(Geometry geom) throws XMLStreamException {
+		// simplified shapes may have become a single polygon
+		if (geom instanceof Polygon) {
+			writePolygon((Polygon) geom);
+			return;
+		}
+		if (! (geom instanceof MultiPolygon)) {
+			LOG.warn("Expected multipolygon in shapefile");
+			return;
+		}
+		int numPoly = geom.getNumGeometries();
+		if (numPoly > 1) {
+			xml.writeStartElement("MultiGeometry");
+		}
+		for (int i = 0; i < numPoly; i++) {
+			Geometry geometryN = geom.getGeometryN(i);
+			if (geometryN instanceof Polygon) {
+				writePolygon((Polygon) geometryN);
+			} else {
+				LOG.warn("Expected polygon in shapefile");
+			}
+		}
+		if (numPoly > 1) {
+			xml.writeEndElement();
+		}
+	}
+
+	/**
+	 * Write a placemark, which is only shown when the region has a certain size on screen
+	 * 
+	 * @param name name of the placemark
+	 * @param styleUrl style URL
+	 * @param geom geometry in WGS84 coordinates
+	 * @param region bounding box in WGS84 coordinates, or null
+	 * @param minLodPixels minimum size in pixels
+	 * @param maxLodPixels maximum size in pixels, or -1
+	 * @throws IOException 
+	 */
+	public void writePlacemark(String name, String styleUrl, Geometry geom, 
+								Envelope region, int minLodPixels, int maxLodPixels) throws IOException {
+		try {
+			xml.writeStartElement("Placemark");
+			writeElement("name", name);
+			writeElement("styleUrl", styleUrl);
+			writeRegion(region, minLodPixels, maxLodPixels);
+			writeGeometry(geom);
+			xml.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Close the file without completing the document, when writing failed.
+	 * An entry of a KMZ file is discarded.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (out instanceof KmzWriter.EntryStream) {
+			((KmzWriter.EntryStream) out).abort();
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException ioe) {
+			LOG.warn("Could not close incomplete KML file");
+		}
+	}
+
+	/**
+	 * Complete the document and close the file.
+	 * The file is aborted when the document could not be completed.
+	 * 
+	 * @throws IOException 
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			xml.writeEndElement();
+			xml.writeEndElement();
+			xml.writeEndDocument();
+			xml.close();
+			w.flush();
+		} catch (XMLStreamException ex) {
+			abort();
+			throw new IOException(ex);
+		} catch (IOException | RuntimeException ex) {
+			abort();
+			throw ex;
+		}
+		closed = true;
+		w.close();
+	}
+
+	/**
+	 * Constructor, starts the KML document
+	 * 
+	 * @param out output stream, a file or an entry of a KMZ file
+	 * @param naive remove points that are very close to the previous one
+	 * @param decimals number of decimal digits of the coordinates, or ALL_DECIMALS to keep all points
+	 * @throws IOException 
+	 */
+	public KmlWriter(OutputStream out, boolean naive, int decimals) throws IOException {
+		this.out = out;
+		this.w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		this.naive = naive;
+		this.decimals = decimals;
+		this.scale = (long) Math.pow(10, decimals);
+		try {
+			this.xml = FACTORY.createXMLStreamWriter(w);
+			xml.writeStartDocument("UTF-8", "1.0");
+			xml.writeStartElement("kml");
+			xml.writeDefaultNamespace(NS);
+			xml.writeStartElement("Document");
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write KML files into one KMZ (zip) file.
+ * 
+ * Each entry is compressed while it is being written, straight into the zip file, 
+ * so only the compression buffers are kept in memory.
+ * Entries are written one after the other, and the first entry should be the root KML file.
+ * When the conversion fails, the KMZ file should be aborted instead of closed, so it is deleted.
+ * 
+ * @author Bart Hanssens
+ */
+public class KmzWriter implements Closeable {
+	private final static Logger LOG = LoggerFactory.getLogger(KmzWriter.class);
+
+	private final Path file;
+	private final ZipOutputStream zip;
+	private EntryStream current = null;
+	private boolean failed = false;
+	private boolean closed = false;
+
+	/**
+	 * Output stream for one entry, closing the stream only closes the entry
+	 */
+	public class EntryStream extends FilterOutputStream {
+		private boolean done = false;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				throw new IOException("Entry already closed");
+			}
+			try {
+				out.write(b, off, len);
+			} catch (IOException | RuntimeException ex) {
+				abort();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Discard the entry, the KMZ file can then only be aborted
+		 */
+		public void abort() {
+			synchronized (KmzWriter.this) {
+				if (done) {
+					return;
+				}
+				done = true;
+				failed = true;
+				current = null;
+			}
+		}
+
+		/**
+		 * Complete the entry
+		 * 
+		 * @throws IOException 
+		 */
+		@Override
+		public void close() throws IOException {
+			synchronized (KmzWriter.this) {
+				if (done) {
+					return;
+				}
+				done = true;
+				current = null;
+				try {
+					zip.closeEntry();
+				} catch (IOException | RuntimeException ex) {
+					failed = true;
+					throw ex;
+				}
+			}
+		}
+
+		private EntryStream() {
+			super(zip);
+		}
+	}
+
+	/**
+	 * Start a new entry.
+	 * The previous entry must be closed first.
+	 * 
+	 * @param name name of the entry
+	 * @return output stream, closing it completes the entry
+	 * @throws IOException 
+	 */
+	public synchronized EntryStream newEntry(String name) throws IOException {
+		if (closed || failed) {
+			throw new IOException("KMZ file already closed or failed");
+		}
+		if (current != null) {
+			throw new IOException("Cannot start " + name + " before closing the previous entry");
+		}
+		zip.putNextEntry(new ZipEntry(name));
+		current = new EntryStream();
+		return current;
+	}
+
+	/**
+	 * Add a complete entry
+	 * 
+	 * @param name name of the entry
+	 * @param data uncompressed data
+	 * @throws IOException 
+	 */
+	public synchronized void addEntry(String name, byte[] data) throws IOException {
+		try (OutputStream out = newEntry(name)) {
+			out.write(data);
+		}
+	}
+
+	/**
+	 * Close and delete the KMZ file
+	 */
+	public synchronized void abort() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			zip.close();
+		} catch (IOException ioe) {
+			LOG.debug("Could not close incomplete KMZ {}", file);
+		}
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException ioe) {
+			LOG.warn("Could not delete incomplete KMZ {}", file);
+		}
+	}
+
+	/**
+	 * Write the central directory and close the file.
+	 * The file is deleted when an entry is still open or has failed.
+	 * 
+	 * @throws IOException 
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (failed || current != null) {
+			abort();
+			throw new IOException("Incomplete entry in KMZ " + file);
+		}
+		try {
+			zip.close();
+		} catch (IOException | RuntimeException ex) {
+			abort();
+			throw ex;
+		}
+		closed = true;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param file KMZ file
+	 * @param level compression level (0-9)
+	 * @throws IOException 
+	 */
+	public KmzWriter(Path file, int level) throws IOException {
+		this.file = file;
+		this.zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file, 
+												StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+												StandardOpenOption.TRUNCATE_EXISTING)), StandardCharsets.UTF_8);
+		this.zip.setLevel(level);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Run tasks in a dedicated fork/join pool.
+ * Parallel streams started by a task use the threads of this pool instead of the common pool.
+ * 
+ * @author Bart Hanssens
+ */
+final class Parallel {
+	/**
+	 * Unwrap the exception thrown by a task
+	 * 
+	 * @param ee execution exception
+	 * @return I/O exception
+	 */
+	private static IOException unwrap(ExecutionException ee) {
+		Throwable cause = ee.getCause();
+		if (cause instanceof UncheckedIOException) {
+			return ((UncheckedIOException) cause).getCause();
+		}
+		return (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+	}
+
+	/**
+	 * Run a task using a number of threads and wait for the result
+	 * 
+	 * @param <T> type of the result
+	 * @param threads number of threads
+	 * @param task task
+	 * @return result of the task
+	 * @throws IOException when the task failed or was interrupted
+	 */
+	static <T> T submit(int threads, Callable<T> task) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+		try {
+			return pool.submit(task).get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ie);
+		} catch (ExecutionException ee) {
+			throw unwrap(ee);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Run tasks concurrently and wait until all of them are finished
+	 * 
+	 * @param threads number of threads
+	 * @param tasks tasks
+	 * @throws IOException when one of the tasks failed or was interrupted
+	 */
+	static void invokeAll(int threads, List<Callable<Void>> tasks) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+		try {
+			for (Future<Void> f: pool.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ie);
+		} catch (ExecutionException ee) {
+			throw unwrap(ee);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Constructor
+	 */
+	private Parallel() {
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Named shape (e.g. municipality or municipal section)
+ * 
+ * @author Bart Hanssens
+ */
+public class Place {
+	private final String name;
+	private final String zipcode;
+	private final Geometry geometry;
+	private final Envelope region;
+
+	/**
+	 * Get the name (label) of the place
+	 * 
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the zip code, if any
+	 * 
+	 * @return zip code or null
+	 */
+	public String getZipcode() {
+		return zipcode;
+	}
+
+	/**
+	 * Get the geometry
+	 * 
+	 * @return geometry
+	 */
+	public Geometry getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * Get the bounding box of the full resolution shape, used for level-of-detail regions
+	 * 
+	 * @return bounding box in WGS84 coordinates or null
+	 */
+	public Envelope getRegion() {
+		return region;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name name
+	 * @param zipcode zip code or null
+	 * @param geometry geometry
+	 * @param region bounding box in WGS84 coordinates or null
+	 */
+	public Place(String name, String zipcode, Geometry geometry, Envelope region) {
+		this.name = name;
+		this.zipcode = zipcode;
+		this.geometry = geometry;
+		this.region = region;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.CRS;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import org.opengis.geometry.MismatchedDimensionException;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Reproject geometries, in parallel batches.
+ * The transformation is only looked up once, instead of once per geometry.
+ * 
+ * @author Bart Hanssens
+ */
+public class Reprojector {
+	private final static int BATCH_SIZE = 32;
+
+	private final MathTransform transform;
+	private final int threads;
+
+	/**
+	 * Reprojection function
+	 * 
+	 * @param <T> geometry or points
+	 */
+	private interface Transformer<T> {
+		T apply(T t) throws IOException;
+	}
+
+	/**
+	 * Reproject a single geometry
+	 * 
+	 * @param geom geometry in source coordinate system
+	 * @return geometry in target coordinate system
+	 * @throws IOException 
+	 */
+	public Geometry reproject(Geometry geom) throws IOException {
+		try {
+			return JTS.transform(geom, transform);
+		} catch (MismatchedDimensionException|TransformException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Reproject a bounding box
+	 * 
+	 * @param env bounding box in source coordinate system
+	 * @return bounding box in target coordinate system
+	 * @throws IOException 
+	 */
+	public Envelope reproject(Envelope env) throws IOException {
+		try {
+			return JTS.transform(env, transform);
+		} catch (TransformException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Reproject the points of a line
+	 * 
+	 * @param pts points in source coordinate system
+	 * @return points in target coordinate system
+	 * @throws IOException 
+	 */
+	public Coordinate[] reproject(Coordinate[] pts) throws IOException {
+		double[] xy = new double[pts.length * 2];
+		for (int i = 0; i < pts.length; i++) {
+			xy[2 * i] = pts[i].x;
+			xy[2 * i + 1] = pts[i].y;
+		}
+		try {
+			transform.transform(xy, 0, xy, 0, pts.length);
+		} catch (TransformException ex) {
+			throw new IOException(ex);
+		}
+		Coordinate[] result = new Coordinate[pts.length];
+		for (int i = 0; i < pts.length; i++) {
+			result[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+		}
+		return result;
+	}
+
+	/**
+	 * Reproject a list of items, in parallel batches
+	 * 
+	 * @param <T> type of item
+	 * @param items items in source coordinate system
+	 * @param fun reprojection function
+	 * @return items in target coordinate system, in the same order
+	 * @throws IOException 
+	 */
+	private <T> List<T> reprojectAll(List<T> items, Transformer<T> fun) throws IOException {
+		List<T> result = new ArrayList<>(Collections.nCopies(items.size(), null));
+		int batches = (items.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+
+		Parallel.submit(threads, () -> {
+			IntStream.range(0, batches).parallel().forEach(b -> {
+				int end = Math.min(items.size(), (b + 1) * BATCH_SIZE);
+				for (int i = b * BATCH_SIZE; i < end; i++) {
+					try {
+						result.set(i, fun.apply(items.get(i)));
+					} catch (IOException ioe) {
+						throw new UncheckedIOException(ioe);
+					}
+				}
+			});
+			return null;
+		});
+		return result;
+	}
+
+	/**
+	 * Reproject a list of geometries, in parallel batches
+	 * 
+	 * @param geoms geometries in source coordinate system
+	 * @return geometries in target coordinate system, in the same order
+	 * @throws IOException 
+	 */
+	public List<Geometry> reproject(List<Geometry> geoms) throws IOException {
+		return reprojectAll(geoms, this::reproject);
+	}
+
+	/**
+	 * Reproject a list of arcs (e.g. the arcs of a topology), in parallel batches
+	 * 
+	 * @param arcs points of the arcs in source coordinate system
+	 * @return points of the arcs in target coordinate system, in the same order
+	 * @throws IOException 
+	 */
+	public List<Coordinate[]> reprojectArcs(List<Coordinate[]> arcs) throws IOException {
+		return reprojectAll(arcs, this::reproject);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param source source coordinate system
+	 * @param target target coordinate system
+	 * @param threads number of threads
+	 * @throws IOException when no transformation could be found
+	 */
+	public Reprojector(CoordinateReferenceSystem source, CoordinateReferenceSystem target, int threads) 
+																						throws IOException {
+		try {
+			this.transform = CRS.findMathTransform(source, target, true);
+		} catch (FactoryException ex) {
+			throw new IOException(ex);
+		}
+		this.threads = threads;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Find the junctions between shapes, i.e. the points where a boundary shared by neighbouring shapes starts or ends.
+ * A point is a junction when it has different neighbours in different rings, 
+ * so the part of a ring between two junctions is shared by exactly the same shapes.
+ * 
+ * Similar to the "join" step in TopoJSON.
+ * 
+ * @author Bart Hanssens
+ */
+public class SharedEdges {
+	private final Map<Coordinate, Coordinate[]> neighbours = new HashMap<>();
+	private final Map<Coordinate, Boolean> junctions = new HashMap<>();
+
+	/**
+	 * Check if two unordered pairs of points are equal
+	 * 
+	 * @param pair pair of points
+	 * @param a first point
+	 * @param b second point
+	 * @return true if equal
+	 */
+	private static boolean samePair(Coordinate[] pair, Coordinate a, Coordinate b) {
+		return (pair[0].equals2D(a) && pair[1].equals2D(b)) || (pair[0].equals2D(b) && pair[1].equals2D(a));
+	}
+
+	/**
+	 * Add a closed ring
+	 * 
+	 * @param ring coordinates, with the last point equal to the first
+	 */
+	public void add(Coordinate[] ring) {
+		int n = ring.length - 1;
+		for (int i = 0; i < n; i++) {
+			Coordinate prev = ring[(i + n - 1) % n];
+			Coordinate next = ring[(i + 1) % n];
+
+			Coordinate[] pair = neighbours.putIfAbsent(ring[i], new Coordinate[] { prev, next });
+			if (pair != null && !samePair(pair, prev, next)) {
+				junctions.put(ring[i], Boolean.TRUE);
+			}
+		}
+	}
+
+	/**
+	 * Check if a point is a junction
+	 * 
+	 * @param c point
+	 * @return true if junction
+	 */
+	public boolean isJunction(Coordinate c) {
+		return junctions.containsKey(c);
+	}
+}
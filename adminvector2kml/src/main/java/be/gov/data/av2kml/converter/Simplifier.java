@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+/**
+ * Simplify the shapes of a layer, using a tolerance in meters (Lambert 2008 coordinates).
+ * 
+ * @author Bart Hanssens
+ */
+public class Simplifier {
+	public enum Engine { 
+		/** keep all points */
+		NONE, 
+		/** remove points close to the previous point, when writing the KML */
+		NAIVE, 
+		/** Douglas-Peucker, each shape on its own */
+		DOUGLAS_PEUCKER,
+		/** Douglas-Peucker on the arcs between junctions, so neighbouring shapes keep sharing their boundary */
+		TOPOLOGY_PRESERVING 
+	};
+
+	private final Engine engine;
+	private final double tolerance;
+	private final int threads;
+
+	/**
+	 * Get simplification engine
+	 * 
+	 * @return engine
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Squared distance of a point to a line segment
+	 * 
+	 * @param p point
+	 * @param a start of segment
+	 * @param b end of segment
+	 * @return squared distance
+	 */
+	private static double distanceSq(Coordinate p, Coordinate a, Coordinate b) {
+		double dx = b.x - a.x;
+		double dy = b.y - a.y;
+		double lenSq = dx * dx + dy * dy;
+
+		double t = (lenSq == 0) ? 0 : ((p.x - a.x) * dx + (p.y - a.y) * dy) / lenSq;
+		t = Math.max(0, Math.min(1, t));
+
+		double ex = p.x - (a.x + t * dx);
+		double ey = p.y - (a.y + t * dy);
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * Douglas-Peucker simplification of a line, keeping the first and last point
+	 * 
+	 * @param pts points of the line
+	 * @param tolerance tolerance
+	 * @param minInterior minimum number of points to keep besides the first and last point
+	 * @return simplified line
+	 */
+	static Coordinate[] douglasPeucker(Coordinate[] pts, double tolerance, int minInterior) {
+		if (pts.length < 3) {
+			return pts;
+		}
+		double tolSq = tolerance * tolerance;
+		boolean[] keep = new boolean[pts.length];
+		keep[0] = true;
+		keep[pts.length - 1] = true;
+
+		// iterative, shapes can have many thousands of points
+		int[] stack = new int[2 * pts.length];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = pts.length - 1;
+		int kept = 0;
+
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+
+			double maxSq = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double d = distanceSq(pts[i], pts[first], pts[last]);
+				if (d > maxSq) {
+					maxSq = d;
+					index = i;
+				}
+			}
+			if (index > 0 && (maxSq > tolSq || (kept < minInterior && maxSq > 0))) {
+				keep[index] = true;
+				kept++;
+				stack[top++] = first;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+
+		List<Coordinate> result = new ArrayList<>();
+		for (int i = 0; i < pts.length; i++) {
+			if (keep[i]) {
+				result.add(pts[i]);
+			}
+		}
+		return result.toArray(new Coordinate[result.size()]);
+	}
+
+	/**
+	 * Simplify the arcs of a topology using Douglas-Peucker, in parallel.
+	 * Arcs are always stored in the same direction, so both neighbours get the same result.
+	 * 
+	 * @param arcs points of the arcs
+	 * @param minInterior minimum number of points to keep per arc, besides the first and last point
+	 * @return simplified arcs, in the same order
+	 * @throws IOException
+	 */
+	public List<Coordinate[]> simplifyArcs(List<Coordinate[]> arcs, int[] minInterior) throws IOException {
+		return Parallel.submit(threads, () -> IntStream.range(0, arcs.size()).parallel()
+				.mapToObj(i -> douglasPeucker(arcs.get(i), tolerance, minInterior[i]))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Simplify the shapes of a layer, each shape on its own.
+	 * The topology-preserving engine simplifies the arcs of a topology instead, using simplifyArcs.
+	 * 
+	 * @param geoms shapes in Lambert 2008 coordinates
+	 * @return simplified shapes, in the same order
+	 * @throws IOException
+	 */
+	public List<Geometry> simplify(List<Geometry> geoms) throws IOException {
+		if (engine == Engine.NONE || engine == Engine.NAIVE) {
+			return geoms;
+		}
+		return Parallel.submit(threads, () -> geoms.parallelStream()
+				.map(g -> DouglasPeuckerSimplifier.simplify(g, tolerance))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param engine simplification engine
+	 * @param tolerance tolerance in meters
+	 * @param threads number of threads
+	 */
+	public Simplifier(Engine engine, double tolerance, int threads) {
+		this.engine = engine;
+		this.tolerance = tolerance;
+		this.threads = threads;
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Topology of a set of shapes, similar to TopoJSON.
+ * 
+ * The rings of the shapes are split into arcs at the junctions between neighbouring shapes.
+ * An edge shared by two shapes (e.g. two municipalities, or a municipality and a municipal section) 
+ * is only stored once, so it only has to be simplified and reprojected once, 
+ * and the neighbours keep sharing exactly the same boundary.
+ * 
+ * @author Bart Hanssens
+ */
+public class Topology {
+	private final List<Coordinate[]> arcs = new ArrayList<>();
+	private final Map<ArcKey, Integer> index = new HashMap<>();
+	// per shape: polygons, rings, references to arcs (~index when reversed)
+	private final List<int[][][]> shapes = new ArrayList<>();
+	private final GeometryFactory factory;
+	private final int[] minInterior;
+
+	/**
+	 * Points of an arc, used as key for finding duplicates
+	 */
+	private static class ArcKey {
+		private final Coordinate[] pts;
+		private final int hash;
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof ArcKey) && Arrays.equals(pts, ((ArcKey) o).pts);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		private ArcKey(Coordinate[] pts) {
+			this.pts = pts;
+			this.hash = Arrays.hashCode(pts);
+		}
+	}
+
+	/**
+	 * Get the arcs, each arc is stored in only one direction
+	 * 
+	 * @return list of arcs
+	 */
+	public List<Coordinate[]> getArcs() {
+		return Collections.unmodifiableList(arcs);
+	}
+
+	/**
+	 * Get the minimum number of points (besides the first and last point) to keep per arc when simplifying.
+	 * A ring consisting of only one or two arcs (e.g. an enclave) would otherwise collapse.
+	 * 
+	 * @return number of points per arc
+	 */
+	public int[] getMinInterior() {
+		return minInterior;
+	}
+
+	/**
+	 * Get number of shapes
+	 * 
+	 * @return number of shapes
+	 */
+	public int size() {
+		return shapes.size();
+	}
+
+	/**
+	 * Reverse an array of points
+	 * 
+	 * @param pts points
+	 * @return reversed copy
+	 */
+	static Coordinate[] reverse(Coordinate[] pts) {
+		Coordinate[] rev = new Coordinate[pts.length];
+		for (int i = 0; i < pts.length; i++) {
+			rev[i] = pts[pts.length - 1 - i];
+		}
+		return rev;
+	}
+
+	/**
+	 * Check if an arc has to be reversed to get the direction in which it is stored.
+	 * Both neighbours must end up with the same direction.
+	 * 
+	 * @param pts points of the arc
+	 * @return true if reversed
+	 */
+	private static boolean isReversed(Coordinate[] pts) {
+		int last = pts.length - 1;
+		int cmp = pts[0].compareTo(pts[last]);
+		if (cmp == 0 && last > 1) {
+			// closed arc, e.g. an enclave
+			cmp = pts[1].compareTo(pts[last - 1]);
+		}
+		return cmp > 0;
+	}
+
+	/**
+	 * Add an arc, or find the existing arc
+	 * 
+	 * @param pts points of the arc
+	 * @return reference to the arc, ~index when it is reversed
+	 */
+	private int addArc(List<Coordinate> pts) {
+		Coordinate[] arc = pts.toArray(new Coordinate[pts.size()]);
+		boolean reversed = isReversed(arc);
+		if (reversed) {
+			arc = reverse(arc);
+		}
+		Integer i = index.get(new ArcKey(arc));
+		if (i == null) {
+			i = arcs.size();
+			arcs.add(arc);
+			index.put(new ArcKey(arc), i);
+		}
+		return reversed ? ~i : i;
+	}
+
+	/**
+	 * Split a closed ring into arcs at the junctions
+	 * 
+	 * @param ring coordinates, with the last point equal to the first
+	 * @param junctions junctions
+	 * @return references to arcs
+	 */
+	int[] addRing(Coordinate[] ring, SharedEdges junctions) {
+		int n = ring.length - 1;
+		// start at a junction, or at the "smallest" point when the ring is not split by junctions
+		int start = -1;
+		int smallest = 0;
+		for (int i = 0; i < n && start < 0; i++) {
+			if (junctions.isJunction(ring[i])) {
+				start = i;
+			} else if (ring[i].compareTo(ring[smallest]) < 0) {
+				smallest = i;
+			}
+		}
+		if (start < 0) {
+			start = smallest;
+		}
+
+		List<Integer> refs = new ArrayList<>();
+		List<Coordinate> arc = new ArrayList<>();
+		arc.add(ring[start]);
+		for (int k = 1; k <= n; k++) {
+			Coordinate c = ring[(start + k) % n];
+			arc.add(c);
+			if (k == n || junctions.isJunction(c)) {
+				refs.add(addArc(arc));
+				arc.clear();
+				arc.add(c);
+			}
+		}
+		return refs.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Join the arcs of a ring
+	 * 
+	 * @param refs references to arcs
+	 * @param pts points of all the arcs
+	 * @return coordinates, with the last point equal to the first
+	 */
+	static Coordinate[] joinRing(int[] refs, List<Coordinate[]> pts) {
+		List<Coordinate> ring = new ArrayList<>();
+		for (int ref: refs) {
+			Coordinate[] arc = (ref >= 0) ? pts.get(ref) : reverse(pts.get(~ref));
+			// first point is the last point of the previous arc
+			int first = ring.isEmpty() ? 0 : 1;
+			ring.addAll(Arrays.asList(arc).subList(first, arc.length));
+		}
+		return ring.toArray(new Coordinate[ring.size()]);
+	}
+
+	/**
+	 * Get the shapes, using the (simplified or reprojected) points of the arcs.
+	 * Rings that have become too small are left out.
+	 * 
+	 * @param pts points per arc, in the same order as the arcs
+	 * @return list of multipolygons, in the same order as the shapes
+	 */
+	public List<Geometry> getShapes(List<Coordinate[]> pts) {
+		List<Geometry> geoms = new ArrayList<>(shapes.size());
+		for (int[][][] shape: shapes) {
+			List<Polygon> polys = new ArrayList<>(shape.length);
+			for (int[][] rings: shape) {
+				Coordinate[] shell = joinRing(rings[0], pts);
+				if (shell.length < 4) {
+					continue;
+				}
+				List<LinearRing> holes = new ArrayList<>();
+				for (int j = 1; j < rings.length; j++) {
+					Coordinate[] hole = joinRing(rings[j], pts);
+					if (hole.length >= 4) {
+						holes.add(factory.createLinearRing(hole));
+					}
+				}
+				polys.add(factory.createPolygon(factory.createLinearRing(shell), 
+												holes.toArray(new LinearRing[holes.size()])));
+			}
+			geoms.add(factory.createMultiPolygon(polys.toArray(new Polygon[polys.size()])));
+		}
+		return geoms;
+	}
+
+	/**
+	 * Collect the exterior and interior rings of a polygon
+	 * 
+	 * @param poly polygon
+	 * @return rings
+	 */
+	private static List<Coordinate[]> getRings(Polygon poly) {
+		List<Coordinate[]> rings = new ArrayList<>();
+		rings.add(poly.getExteriorRing().getCoordinates());
+		for (int j = 0; j < poly.getNumInteriorRing(); j++) {
+			rings.add(poly.getInteriorRingN(j).getCoordinates());
+		}
+		return rings;
+	}
+
+	/**
+	 * Constructor, extracting the arcs of all the shapes
+	 * 
+	 * @param geoms polygons or multipolygons
+	 */
+	public Topology(List<Geometry> geoms) {
+		this.factory = geoms.isEmpty() ? new GeometryFactory() : geoms.get(0).getFactory();
+
+		List<List<List<Coordinate[]>>> polys = new ArrayList<>(geoms.size());
+		SharedEdges junctions = new SharedEdges();
+		for (Geometry geom: geoms) {
+			List<List<Coordinate[]>> rings = new ArrayList<>();
+			for (int i = 0; i < geom.getNumGeometries(); i++) {
+				Geometry g = geom.getGeometryN(i);
+				if (g instanceof Polygon) {
+					List<Coordinate[]> r = getRings((Polygon) g);
+					r.forEach(junctions::add);
+					rings.add(r);
+				}
+			}
+			polys.add(rings);
+		}
+
+		List<Integer> minPts = new ArrayList<>();
+		for (List<List<Coordinate[]>> shape: polys) {
+			int[][][] refs = new int[shape.size()][][];
+			for (int p = 0; p < refs.length; p++) {
+				List<Coordinate[]> rings = shape.get(p);
+				refs[p] = new int[rings.size()][];
+				for (int r = 0; r < refs[p].length; r++) {
+					refs[p][r] = addRing(rings.get(r), junctions);
+					// keep enough points, so rings of one or two arcs have at least 4 points
+					int min = (refs[p][r].length == 1) ? 2 : (refs[p][r].length == 2) ? 1 : 0;
+					for (int ref: refs[p][r]) {
+						int i = (ref >= 0) ? ref : ~ref;
+						while (minPts.size() <= i) {
+							minPts.add(0);
+						}
+						minPts.set(i, Math.max(minPts.get(i), min));
+					}
+				}
+			}
+			shapes.add(refs);
+		}
+		this.minInterior = minPts.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class KmlWriterTest {
+	private final static String NS = "http://www.opengis.net/kml/2.2";
+	private final static GeometryFactory FACTORY = new GeometryFactory();
+
+	/**
+	 * Create a closed ring
+	 * 
+	 * @param xy x and y of each point, including the closing point
+	 * @return linear ring
+	 */
+	private static LinearRing ring(double... xy) {
+		Coordinate[] ring = new Coordinate[xy.length / 2];
+		for (int i = 0; i < ring.length; i++) {
+			ring[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+		}
+		return FACTORY.createLinearRing(ring);
+	}
+
+	/**
+	 * Create a polygon
+	 * 
+	 * @param shell exterior ring
+	 * @param holes interior rings
+	 * @return polygon
+	 */
+	private static Polygon polygon(LinearRing shell, LinearRing... holes) {
+		return FACTORY.createPolygon(shell, holes);
+	}
+
+	/**
+	 * Write one placemark and parse the KML file
+	 * 
+	 * @param naive naive simplification
+	 * @param decimals number of decimal digits
+	 * @param geom geometry
+	 * @return parsed document
+	 * @throws Exception 
+	 */
+	private static Document write(boolean naive, int decimals, Geometry geom) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (KmlWriter kml = new KmlWriter(out, naive, decimals)) {
+			kml.writeStyle("style", "ff0000ff");
+			kml.writePlacemark("name", "#style", geom, new Envelope(4.0, 5.0, 50.0, 51.0), 128, 512);
+			kml.writeNetworkLink("layer.kml", new Envelope(3.0, 6.0, 49.0, 52.0), 2048, -1);
+		}
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * Get the text of the coordinates elements
+	 * 
+	 * @param doc KML document
+	 * @return coordinates of each ring
+	 */
+	private static List<String> coordinates(Document doc) {
+		List<String> rings = new ArrayList<>();
+		NodeList nodes = doc.getElementsByTagNameNS(NS, "coordinates");
+		for (int i = 0; i < nodes.getLength(); i++) {
+			rings.add(nodes.item(i).getTextContent());
+		}
+		return rings;
+	}
+
+	/**
+	 * Get the names of the child elements
+	 * 
+	 * @param parent parent element
+	 * @return names
+	 */
+	private static List<String> children(Node parent) {
+		List<String> names = new ArrayList<>();
+		for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if (n.getNodeType() == Node.ELEMENT_NODE) {
+				names.add(n.getLocalName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Get the first element with a name
+	 * 
+	 * @param doc KML document
+	 * @param name element name
+	 * @return element
+	 */
+	private static Element element(Document doc, String name) {
+		return (Element) doc.getElementsByTagNameNS(NS, name).item(0);
+	}
+
+	@Test
+	public void formatTest() throws Exception {
+		Polygon poly = polygon(ring(-4.5, 50.25, -0.5, -0.05, 0.0012, 1.5, 12.34, 0.0, 3.0, -0.00004, -4.5, 50.25));
+		assertEquals(List.of("-4.5,50.25 -0.5,-0.05 0.0012,1.5 12.34,0 3,0 -4.5,50.25"), 
+					coordinates(write(false, 4, poly)));
+	}
+
+	@Test
+	public void decimalsTest() throws Exception {
+		Polygon poly = polygon(ring(4.4, 50.4, 6.6, 50.4, 6.6, 52.6, 4.4, 50.4));
+		assertEquals(List.of("4,50 7,50 7,53 4,50"), coordinates(write(false, 0, poly)));
+
+		poly = polygon(ring(4.123456789, 50.000000001, 5.1, 50.2, -0.000000001, 51.0, 4.123456789, 50.000000001));
+		assertEquals(List.of("4.123456789,50.000000001 5.1,50.2 -0.000000001,51 4.123456789,50.000000001"), 
+					coordinates(write(false, KmlWriter.ALL_DECIMALS, poly)));
+	}
+
+	@Test
+	public void roundingTest() throws Exception {
+		// second point is the same as the first one after rounding
+		Polygon poly = polygon(ring(4.0, 50.0, 4.00001, 50.00001, 4.1, 50.0, 4.1, 50.1, 4.0, 50.0));
+		assertEquals(List.of("4,50 4.1,50 4.1,50.1 4,50"), coordinates(write(false, 4, poly)));
+
+		// all points are kept, even duplicates
+		poly = polygon(ring(4.0, 50.0, 4.0, 50.0, 4.1, 50.0, 4.1, 50.1, 4.0, 50.0));
+		assertEquals(List.of("4,50 4,50 4.1,50 4.1,50.1 4,50"), 
+					coordinates(write(false, KmlWriter.ALL_DECIMALS, poly)));
+	}
+
+	@Test
+	public void naiveTest() throws Exception {
+		// point close to the previous one is dropped, closing point is kept even when close to the previous one
+		Polygon poly = polygon(ring(4.0, 50.0, 4.0002, 50.0, 4.01, 50.0, 4.01, 50.01, 4.0001, 50.0001, 4.0, 50.0));
+		assertEquals(List.of("4,50 4.01,50 4.01,50.01 4.0001,50.0001 4,50"), coordinates(write(true, 4, poly)));
+
+		// first point close to 0,0 is kept
+		poly = polygon(ring(0.0001, 0.0001, 0.01, 0.0, 0.01, 0.01, 0.0001, 0.0001));
+		assertEquals(List.of("0.0001,0.0001 0.01,0 0.01,0.01 0.0001,0.0001"), coordinates(write(true, 4, poly)));
+	}
+
+	@Test
+	public void orderTest() throws Exception {
+		Polygon first = polygon(ring(4.0, 50.0, 4.5, 50.0, 4.5, 50.5, 4.0, 50.0), 
+								ring(4.3, 50.1, 4.4, 50.1, 4.4, 50.2, 4.3, 50.1));
+		Polygon second = polygon(ring(5.0, 50.0, 5.5, 50.0, 5.5, 50.5, 5.0, 50.0));
+		Document doc = write(false, 4, FACTORY.createMultiPolygon(new Polygon[] { first, second }));
+
+		assertEquals(List.of("Style", "Placemark", "NetworkLink"), children(element(doc, "Document")));
+		assertEquals(List.of("name", "styleUrl", "Region", "MultiGeometry"), children(element(doc, "Placemark")));
+		assertEquals(List.of("Polygon", "Polygon"), children(element(doc, "MultiGeometry")));
+		assertEquals(List.of("outerBoundaryIs", "innerBoundaryIs"), children(element(doc, "Polygon")));
+		assertEquals(List.of("Region", "Link"), children(element(doc, "NetworkLink")));
+
+		Element region = element(doc, "Region");
+		assertEquals(List.of("LatLonAltBox", "Lod"), children(region));
+		assertEquals(List.of("north", "south", "east", "west"), children(element(doc, "LatLonAltBox")));
+		assertEquals("51.0", element(doc, "north").getTextContent());
+		assertEquals("4.0", element(doc, "west").getTextContent());
+		assertEquals(List.of("minLodPixels", "maxLodPixels"), children(element(doc, "Lod")));
+		assertEquals("128", element(doc, "minLodPixels").getTextContent());
+		assertEquals("512", element(doc, "maxLodPixels").getTextContent());
+
+		NodeList lods = doc.getElementsByTagNameNS(NS, "Lod");
+		Element linkLod = (Element) lods.item(1);
+		assertEquals("2048", linkLod.getElementsByTagNameNS(NS, "minLodPixels").item(0).getTextContent());
+		assertEquals("-1", linkLod.getElementsByTagNameNS(NS, "maxLodPixels").item(0).getTextContent());
+	}
+}
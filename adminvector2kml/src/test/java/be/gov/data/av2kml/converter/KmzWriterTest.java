@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class KmzWriterTest {
+	@TempDir
+	Path tmp;
+
+	/**
+	 * Create some repetitive content, easy to compress
+	 * 
+	 * @param name name to repeat
+	 * @return bytes
+	 */
+	private static byte[] content(String name) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("<Placemark><name>").append(name).append(i).append("</name></Placemark>\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a KMZ file with three entries
+	 * 
+	 * @param file KMZ file
+	 * @param level compression level
+	 * @throws IOException 
+	 */
+	private static void writeKmz(Path file, int level) throws IOException {
+		try (KmzWriter kmz = new KmzWriter(file, level)) {
+			try (OutputStream out = kmz.newEntry("doc.kml")) {
+				out.write(content("doc"));
+			}
+			try (OutputStream out = kmz.newEntry("a.kml")) {
+				byte[] a = content("a");
+				out.write(a, 0, 10);
+				out.write(a, 10, a.length - 10);
+			}
+			kmz.addEntry("b.kml", content("b"));
+		}
+	}
+
+	@Test
+	public void readBackTest() throws IOException {
+		Path file = tmp.resolve("test.kmz");
+		writeKmz(file, 6);
+
+		List<String> names = new ArrayList<>();
+		try (ZipFile zip = new ZipFile(file.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				names.add(entry.getName());
+
+				byte[] data;
+				try (InputStream in = zip.getInputStream(entry)) {
+					data = in.readAllBytes();
+				}
+				String name = entry.getName().replace(".kml", "");
+				assertArrayEquals(content(name), data);
+
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				assertEquals(crc.getValue(), entry.getCrc());
+				assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+			}
+		}
+		// the first entry is the one opened by Google Earth
+		assertEquals(List.of("doc.kml", "a.kml", "b.kml"), names);
+	}
+
+	@Test
+	public void levelTest() throws IOException {
+		Path fast = tmp.resolve("fast.kmz");
+		Path best = tmp.resolve("best.kmz");
+		writeKmz(fast, 0);
+		writeKmz(best, 9);
+		assertTrue(Files.size(best) < Files.size(fast));
+	}
+
+	@Test
+	public void abortTest() throws IOException {
+		Path file = tmp.resolve("abort.kmz");
+		KmzWriter kmz = new KmzWriter(file, 6);
+		kmz.addEntry("doc.kml", content("doc"));
+		kmz.abort();
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	public void abortEntryTest() throws IOException {
+		Path file = tmp.resolve("entry.kmz");
+		KmzWriter kmz = new KmzWriter(file, 6);
+		KmzWriter.EntryStream out = kmz.newEntry("doc.kml");
+		out.write(content("doc"));
+		out.abort();
+		assertThrows(IOException.class, () -> out.write(1));
+		assertThrows(IOException.class, () -> kmz.close());
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	public void entryOpenTest() throws IOException {
+		Path file = tmp.resolve("open.kmz");
+		KmzWriter kmz = new KmzWriter(file, 6);
+		kmz.newEntry("doc.kml");
+		assertThrows(IOException.class, () -> kmz.newEntry("a.kml"));
+		kmz.abort();
+		assertFalse(Files.exists(file));
+	}
+}
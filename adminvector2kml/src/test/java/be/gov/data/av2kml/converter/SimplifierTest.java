@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class SimplifierTest {
+	/**
+	 * Almost straight line, with points alternating 0.1 meter above and below
+	 * 
+	 * @param len number of points
+	 * @return points
+	 */
+	private static Coordinate[] zigzag(int len) {
+		Coordinate[] pts = new Coordinate[len];
+		for (int i = 0; i < len; i++) {
+			pts[i] = new Coordinate(i * 10, (i % 2 == 0) ? 0.1 : -0.1);
+		}
+		return pts;
+	}
+
+	@Test
+	public void toleranceTest() {
+		Coordinate[] pts = zigzag(11);
+
+		// all points are within the tolerance, only the first and last point are kept
+		assertArrayEquals(new Coordinate[] { pts[0], pts[10] }, Simplifier.douglasPeucker(pts, 1, 0));
+		// no point is within the tolerance
+		assertArrayEquals(pts, Simplifier.douglasPeucker(pts, 0.01, 0));
+	}
+
+	@Test
+	public void spikeTest() {
+		Coordinate[] pts = zigzag(11);
+		pts[5] = new Coordinate(50, 100);
+
+		// the spike and its base are kept, the almost straight parts are simplified
+		assertArrayEquals(new Coordinate[] { pts[0], pts[4], pts[5], pts[6], pts[10] }, 
+							Simplifier.douglasPeucker(pts, 1, 0));
+	}
+
+	@Test
+	public void minInteriorTest() {
+		Coordinate[] pts = zigzag(11);
+		assertEquals(5, Simplifier.douglasPeucker(pts, 1, 3).length);
+
+		// closed arc, e.g. an enclave, must remain a valid ring of at least 4 points
+		Coordinate[] ring = { new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(10, 10), 
+								new Coordinate(0, 10), new Coordinate(0, 0) };
+		Coordinate[] simple = Simplifier.douglasPeucker(ring, 100, 2);
+		assertEquals(4, simple.length);
+		assertEquals(ring[0], simple[0]);
+		assertEquals(ring[4], simple[3]);
+
+		// straight line, no point can be forced
+		Coordinate[] line = { new Coordinate(0, 0), new Coordinate(5, 0), new Coordinate(10, 0) };
+		assertEquals(2, Simplifier.douglasPeucker(line, 1, 2).length);
+	}
+
+	@Test
+	public void shortArcTest() {
+		Coordinate[] pts = { new Coordinate(0, 0), new Coordinate(10, 10) };
+		assertSame(pts, Simplifier.douglasPeucker(pts, 100, 2));
+
+		Coordinate[] single = { new Coordinate(0, 0) };
+		assertSame(single, Simplifier.douglasPeucker(single, 100, 0));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.av2kml.converter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class TopologyTest {
+	private final static GeometryFactory FACTORY = new GeometryFactory();
+
+	/**
+	 * Create a closed ring
+	 * 
+	 * @param xy x and y of each point, without repeating the first point
+	 * @return coordinates, with the last point equal to the first
+	 */
+	private static Coordinate[] ring(double... xy) {
+		Coordinate[] ring = new Coordinate[xy.length / 2 + 1];
+		for (int i = 0; i < xy.length / 2; i++) {
+			ring[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+		}
+		ring[ring.length - 1] = ring[0];
+		return ring;
+	}
+
+	/**
+	 * Create a multipolygon with one polygon, like the shapes in the AdminVector shapefiles
+	 * 
+	 * @param shell exterior ring
+	 * @param holes interior rings
+	 * @return multipolygon
+	 */
+	private static Geometry shape(Coordinate[] shell, Coordinate[]... holes) {
+		Polygon poly = FACTORY.createPolygon(FACTORY.createLinearRing(shell), 
+			Arrays.stream(holes).map(FACTORY::createLinearRing).toArray(LinearRing[]::new));
+		return FACTORY.createMultiPolygon(new Polygon[] { poly });
+	}
+
+	// two squares sharing the boundary x = 10
+	private final static Coordinate[] LEFT = ring(0, 0, 10, 0, 10, 10, 0, 10);
+	private final static Coordinate[] RIGHT = ring(10, 0, 20, 0, 20, 10, 10, 10);
+
+	// square with a hole, completely filled by an enclave
+	private final static Coordinate[] OUTER = ring(30, 0, 60, 0, 60, 30, 30, 30);
+	private final static Coordinate[] HOLE = ring(40, 10, 40, 20, 50, 20, 50, 10);
+	private final static Coordinate[] ENCLAVE = ring(40, 10, 50, 10, 50, 20, 40, 20);
+
+	@Test
+	public void junctionTest() {
+		SharedEdges edges = new SharedEdges();
+		edges.add(LEFT);
+		edges.add(RIGHT);
+
+		assertTrue(edges.isJunction(new Coordinate(10, 0)));
+		assertTrue(edges.isJunction(new Coordinate(10, 10)));
+		assertFalse(edges.isJunction(new Coordinate(0, 0)));
+		assertFalse(edges.isJunction(new Coordinate(20, 10)));
+	}
+
+	@Test
+	public void sharedArcTest() {
+		Topology topology = new Topology(List.of(shape(LEFT), shape(RIGHT)));
+		List<Coordinate[]> arcs = topology.getArcs();
+
+		// shared boundary, and the remaining part of each square
+		assertEquals(3, arcs.size());
+		Coordinate[] shared = { new Coordinate(10, 0), new Coordinate(10, 10) };
+		assertEquals(1, arcs.stream().filter(a -> Arrays.equals(a, shared) 
+												|| Arrays.equals(a, Topology.reverse(shared))).count());
+	}
+
+	@Test
+	public void enclaveTest() {
+		Topology topology = new Topology(List.of(shape(OUTER, HOLE), shape(ENCLAVE)));
+		List<Coordinate[]> arcs = topology.getArcs();
+
+		// no junctions, so each ring is one closed arc, and the enclave shares its arc with the hole
+		assertEquals(2, arcs.size());
+		for (int i = 0; i < arcs.size(); i++) {
+			Coordinate[] arc = arcs.get(i);
+			assertEquals(5, arc.length);
+			assertEquals(arc[0], arc[4]);
+			// rings of one arc need at least 2 interior points to remain a ring
+			assertEquals(2, topology.getMinInterior()[i]);
+		}
+	}
+
+	@Test
+	public void reassemblyTest() {
+		List<Geometry> geoms = List.of(shape(LEFT), shape(RIGHT), shape(OUTER, HOLE), shape(ENCLAVE));
+		Topology topology = new Topology(geoms);
+		assertEquals(geoms.size(), topology.size());
+
+		// rings may start at another point, so compare the normalized shapes
+		List<Geometry> shapes = topology.getShapes(topology.getArcs());
+		assertEquals(geoms.size(), shapes.size());
+		for (int i = 0; i < geoms.size(); i++) {
+			assertTrue(geoms.get(i).norm().equalsExact(shapes.get(i).norm()), "Shape " + i);
+		}
+	}
+
+	@Test
+	public void simplifiedNeighboursTest() throws IOException {
+		// shared boundary that is not straight, going up from (10, 0) to (10, 10)
+		Coordinate[] left = ring(0, 0, 10, 0, 10.1, 1, 9.8, 2, 10.3, 3, 9.9, 4, 10.05, 5, 
+									9.6, 6, 10.2, 7, 9.95, 8, 10.1, 9, 10, 10, 0, 10);
+		Coordinate[] right = ring(10, 0, 20, 0, 20, 10, 10, 10, 10.1, 9, 9.95, 8, 10.2, 7, 
+									9.6, 6, 10.05, 5, 9.9, 4, 10.3, 3, 9.8, 2, 10.1, 1);
+
+		Topology topology = new Topology(List.of(shape(left), shape(right)));
+		Simplifier simplifier = new Simplifier(Simplifier.Engine.TOPOLOGY_PRESERVING, 0.25, 2);
+		List<Geometry> shapes = topology.getShapes(simplifier.simplifyArcs(topology.getArcs(), 
+																			topology.getMinInterior()));
+
+		// points of the simplified boundary, as seen from each side
+		Set<Coordinate> fromLeft = new HashSet<>();
+		for (Coordinate c: shapes.get(0).getCoordinates()) {
+			if (c.x > 9 && c.x < 11) {
+				fromLeft.add(c);
+			}
+		}
+		Set<Coordinate> fromRight = new HashSet<>();
+		for (Coordinate c: shapes.get(1).getCoordinates()) {
+			if (c.x > 9 && c.x < 11) {
+				fromRight.add(c);
+			}
+		}
+		// some points are removed, but both neighbours keep the same ones
+		assertTrue(fromLeft.size() > 2 && fromLeft.size() < 11);
+		assertEquals(fromLeft, fromRight);
+	}
+}
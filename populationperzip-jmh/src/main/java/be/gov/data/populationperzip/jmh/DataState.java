@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Synthetic input files, generated once per trial in a temporary directory.
+ * Sizes can be changed on the command line, e.g. "-p sectors=200000".
+ * 
+ * @author Bart Hanssens
+ */
+@State(Scope.Benchmark)
+public class DataState {
+	// keep a reference, otherwise the level may be lost when the logger is garbage collected
+	private final static Logger APP_LOG = Logger.getLogger("be.gov.data.populationperzip");
+
+	@Param({"1000"})
+	public int postalCodes;
+
+	@Param({"2"})
+	public int parts;
+
+	@Param({"20000"})
+	public int sectors;
+
+	@Param({"8"})
+	public int vertices;
+
+	@Param({"10"})
+	public int rowsPerSector;
+
+	@Param({"42"})
+	public long seed;
+
+	public Path dir;
+	public Path postalFile;
+	public Path sectorFile;
+	public Path populationFile;
+
+	/**
+	 * Generate the input files
+	 * 
+	 * @throws IOException 
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		APP_LOG.setLevel(java.util.logging.Level.WARNING);
+
+		dir = Files.createTempDirectory("populationperzip-jmh");
+		postalFile = dir.resolve("postal.shp");
+		sectorFile = dir.resolve("sectors.geojson");
+		populationFile = dir.resolve("population.txt");
+
+		SyntheticData data = new SyntheticData(seed);
+		data.writePostal(postalFile, postalCodes, parts, vertices);
+		data.writeSectors(sectorFile, sectors, vertices);
+		data.writePopulation(populationFile, sectors, rowsPerSector);
+	}
+
+	/**
+	 * Remove the temporary directory
+	 * 
+	 * @throws IOException 
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
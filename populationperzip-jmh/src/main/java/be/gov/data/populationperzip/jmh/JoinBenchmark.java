@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.jmh;
+
+import be.gov.data.populationperzip.PopulationJoin;
+import be.gov.data.populationperzip.locator.PostalLocator;
+import be.gov.data.populationperzip.reader.PopulationMap;
+import be.gov.data.populationperzip.reader.PopulationReader;
+import be.gov.data.populationperzip.reader.PostalReader;
+import be.gov.data.populationperzip.reader.SectorReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Summing the population per zip code, based on the zip code of each sector
+ * 
+ * @author Bart Hanssens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JoinBenchmark {
+	private Map<String, String> sectorZips;
+	private PopulationMap population;
+
+	/**
+	 * Read the input files and find the zip code of each sector
+	 * 
+	 * @param data synthetic files
+	 * @throws IOException 
+	 */
+	@Setup(Level.Trial)
+	public void setup(DataState data) throws IOException {
+		PostalLocator locator = PostalLocator.create(PostalLocator.Type.PREPARED, 
+										new PostalReader().read(data.postalFile));
+		Map<String, Point> sectors = new SectorReader().read(data.sectorFile);
+
+		sectorZips = new HashMap<>();
+		sectors.forEach((nis, point) -> sectorZips.put(nis, locator.locate(point)));
+		population = new PopulationReader().read(data.populationFile);
+	}
+
+	@Benchmark
+	public Map<String, Integer> join() {
+		return new PopulationJoin().join(sectorZips, population);
+	}
+}
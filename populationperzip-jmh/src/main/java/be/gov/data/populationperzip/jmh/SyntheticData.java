@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.jmh;
+
+import be.gov.data.populationperzip.reader.PostalReader;
+import be.gov.data.populationperzip.reader.SectorReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.feature.SchemaException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Generate deterministic synthetic input files: postal districts (SHP), statistical sectors (GeoJSON) 
+ * and population (CSV).
+ * 
+ * Both postal districts and sectors are cells of a distorted grid, covering the same square area.
+ * The cells share their (wiggly) edges, so there are no gaps or overlaps.
+ * The same seed and sizes always result in the same files.
+ * 
+ * @author Bart Hanssens
+ */
+public class SyntheticData {
+	// Lambert 72 coordinates, somewhere in Belgium
+	private final static double ORIGIN_X = 150_000;
+	private final static double ORIGIN_Y = 150_000;
+	private final static double SIZE = 100_000;
+
+	private final static int POSTAL_LATTICE = 1;
+	private final static int SECTOR_LATTICE = 2;
+	private final static int SECTORS_PER_MUNICIPALITY = 100;
+
+	private final GeometryFactory factory = new GeometryFactory();
+	private final long seed;
+
+	/**
+	 * Deterministic pseudo-random number, based on the seed and a few keys (splitmix64)
+	 * 
+	 * @param a first key
+	 * @param b second key
+	 * @param c third key
+	 * @return number between -0.5 and 0.5
+	 */
+	private double noise(long a, long b, long c) {
+		long z = seed + a * 0x9E3779B97F4A7C15L + b * 0xC2B2AE3D27D4EB4FL + c * 0x165667B19E3779F9L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53 - 0.5;
+	}
+
+	/**
+	 * Round to centimeters, like the real data
+	 * 
+	 * @param d coordinate
+	 * @return rounded coordinate
+	 */
+	private static double round(double d) {
+		return Math.round(d * 100) / 100.0;
+	}
+
+	/**
+	 * Distorted grid of nx by ny cells.
+	 * The edges between cells have a number of extra vertices, 
+	 * computed in the same way for both cells sharing an edge.
+	 */
+	private class Lattice {
+		private final int id;
+		private final int nx;
+		private final int ny;
+		private final int vertices;
+		private final double width;
+		private final double height;
+
+		/**
+		 * Get the coordinate of a grid node.
+		 * Nodes on the border are only moved along the border.
+		 * 
+		 * @param i column
+		 * @param j row
+		 * @return coordinate
+		 */
+		private Coordinate node(int i, int j) {
+			double dx = (i == 0 || i == nx) ? 0 : noise(id, i, j * 4) * 0.3;
+			double dy = (j == 0 || j == ny) ? 0 : noise(id, i, j * 4 + 1) * 0.3;
+			return new Coordinate(round(ORIGIN_X + (i + dx) * width), round(ORIGIN_Y + (j + dy) * height));
+		}
+
+		/**
+		 * Add the coordinates of an edge, without the end node
+		 * 
+		 * @param coords list to add coordinates to
+		 * @param i column of the start node
+		 * @param j row of the start node
+		 * @param horizontal horizontal or vertical edge
+		 * @param reverse from end to start node
+		 */
+		private void edge(List<Coordinate> coords, int i, int j, boolean horizontal, boolean reverse) {
+			Coordinate start = node(i, j);
+			Coordinate end = horizontal ? node(i + 1, j) : node(i, j + 1);
+			boolean border = horizontal ? (j == 0 || j == ny) : (i == 0 || i == nx);
+
+			int n = vertices + 1;
+			for (int k = 0; k < n; k++) {
+				int step = reverse ? n - k : k;
+				if (step == 0 || step == n) {
+					coords.add(step == 0 ? start : end);
+					continue;
+				}
+				double f = (double) step / n;
+				double x = start.x + (end.x - start.x) * f;
+				double y = start.y + (end.y - start.y) * f;
+				if (!border) {
+					// move perpendicular to the edge, less near the nodes to avoid self-intersections
+					double wiggle = noise(id, i * 2 + (horizontal ? 0 : 1), j * 4 + 2 + step * 4L * (ny + 1)) 
+										* 0.1 * Math.sin(Math.PI * f);
+					if (horizontal) {
+						y += wiggle * height;
+					} else {
+						x += wiggle * width;
+					}
+				}
+				coords.add(new Coordinate(round(x), round(y)));
+			}
+		}
+
+		/**
+		 * Get the polygon of a cell
+		 * 
+		 * @param i column
+		 * @param j row
+		 * @return polygon
+		 */
+		private Polygon cell(int i, int j) {
+			List<Coordinate> coords = new ArrayList<>(4 * (vertices + 1) + 1);
+			edge(coords, i, j, true, false);
+			edge(coords, i + 1, j, false, false);
+			edge(coords, i, j + 1, true, true);
+			edge(coords, i, j, false, true);
+			coords.add(coords.get(0));
+			return factory.createPolygon(coords.toArray(new Coordinate[coords.size()]));
+		}
+
+		/**
+		 * Constructor
+		 * 
+		 * @param id lattice ID, used to get different distortions
+		 * @param nx number of columns
+		 * @param ny number of rows
+		 * @param vertices number of extra vertices per edge
+		 */
+		private Lattice(int id, int nx, int ny, int vertices) {
+			this.id = id;
+			this.nx = nx;
+			this.ny = ny;
+			this.vertices = vertices;
+			this.width = SIZE / nx;
+			this.height = SIZE / ny;
+		}
+	}
+
+	/**
+	 * Get the NIS-code of a synthetic sector
+	 * 
+	 * @param sector sequence number
+	 * @return NIS-code
+	 */
+	public static String nis(int sector) {
+		return String.format(Locale.ROOT, "%05dA%02d-", 
+					11000 + sector / SECTORS_PER_MUNICIPALITY, sector % SECTORS_PER_MUNICIPALITY);
+	}
+
+	/**
+	 * Get the number of sectors actually generated, which is rounded up to a square grid
+	 * 
+	 * @param sectors requested number of sectors
+	 * @return number of sectors
+	 */
+	public static int sectorCount(int sectors) {
+		int n = (int) Math.ceil(Math.sqrt(sectors));
+		return n * n;
+	}
+
+	/**
+	 * Write postal districts shapefile.
+	 * Each postal code consists of multiple adjacent districts, so these have to be merged when reading.
+	 * 
+	 * @param file shapefile
+	 * @param codes minimum number of postal codes
+	 * @param parts number of districts per postal code
+	 * @param vertices number of extra vertices per edge
+	 * @throws IOException 
+	 */
+	public void writePostal(Path file, int codes, int parts, int vertices) throws IOException {
+		int rows = (int) Math.ceil(Math.sqrt(codes));
+		int cols = (int) Math.ceil((double) codes / rows);
+		Lattice lattice = new Lattice(POSTAL_LATTICE, cols * parts, rows, vertices);
+
+		SimpleFeatureType type;
+		try {
+			type = DataUtilities.createType("postal", 
+						"the_geom:MultiPolygon:srid=31370," + PostalReader.ZIPCODE + ":String");
+		} catch (SchemaException ex) {
+			throw new IOException(ex);
+		}
+
+		Map<String, Serializable> params = new HashMap<>();
+		params.put(ShapefileDataStoreFactory.URLP.key, file.toUri().toURL());
+		params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, Boolean.FALSE);
+
+		ShapefileDataStore store = (ShapefileDataStore) new ShapefileDataStoreFactory().createNewDataStore(params);
+		try {
+			store.setCharset(StandardCharsets.ISO_8859_1);
+			store.createSchema(type);
+			try (FeatureWriter<SimpleFeatureType, SimpleFeature> writer = 
+						store.getFeatureWriterAppend(store.getTypeNames()[0], Transaction.AUTO_COMMIT)) {
+				for (int j = 0; j < lattice.ny; j++) {
+					for (int i = 0; i < lattice.nx; i++) {
+						SimpleFeature feature = writer.next();
+						Polygon p = lattice.cell(i, j);
+						feature.setDefaultGeometry(factory.createMultiPolygon(new Polygon[] { p }));
+						feature.setAttribute(PostalReader.ZIPCODE, String.valueOf(1000 + j * cols + i / parts));
+						writer.write();
+					}
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+	/**
+	 * Write statistical sectors GeoJSON file
+	 * 
+	 * @param file GeoJSON file
+	 * @param sectors minimum number of sectors
+	 * @param vertices number of extra vertices per edge
+	 * @throws IOException 
+	 */
+	public void writeSectors(Path file, int sectors, int vertices) throws IOException {
+		int n = (int) Math.sqrt(sectorCount(sectors));
+		Lattice lattice = new Lattice(SECTOR_LATTICE, n, n, vertices);
+
+		try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			w.write("{\"type\":\"FeatureCollection\",");
+			w.write("\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"urn:ogc:def:crs:EPSG::31370\"}},\n");
+			w.write("\"features\":[\n");
+
+			for (int j = 0; j < n; j++) {
+				for (int i = 0; i < n; i++) {
+					int sector = j * n + i;
+					if (sector > 0) {
+						w.write(",\n");
+					}
+					w.write("{\"type\":\"Feature\",\"properties\":{\"" + SectorReader.NIS + "\":\"");
+					w.write(nis(sector));
+					w.write("\",\"tx_sector_descr_nl\":\"Sector " + sector + "\"},");
+					w.write("\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":[[[");
+
+					Coordinate[] coords = lattice.cell(i, j).getCoordinates();
+					for (int k = 0; k < coords.length; k++) {
+						if (k > 0) {
+							w.write(',');
+						}
+						w.write('[');
+						w.write(Double.toString(coords[k].x));
+						w.write(',');
+						w.write(Double.toString(coords[k].y));
+						w.write(']');
+					}
+					w.write("]]]}}");
+				}
+			}
+			w.write("\n]}\n");
+		}
+	}
+
+	/**
+	 * Write population file, with a number of rows per sector (e.g. per age and sex).
+	 * Each municipality also has a number of persons not assigned to a specific sector.
+	 * 
+	 * @param file CSV file
+	 * @param sectors minimum number of sectors
+	 * @param rowsPerSector number of rows per sector
+	 * @throws IOException 
+	 */
+	public void writePopulation(Path file, int sectors, int rowsPerSector) throws IOException {
+		int count = sectorCount(sectors);
+
+		try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1)) {
+			w.write("CD_REFNIS;TX_DESCR_NL;TX_DESCR_FR;CD_SECTOR;TX_SECTOR_DESCR_NL;TX_SECTOR_DESCR_FR;"
+					+ "CD_SEX;CD_AGE;CD_NATLTY;MS_POPULATION");
+			w.newLine();
+
+			for (int sector = 0; sector < count; sector++) {
+				String nis = nis(sector);
+				String refnis = nis.substring(0, 5);
+				for (int row = 0; row < rowsPerSector; row++) {
+					int population = 1 + (int) ((noise(SECTOR_LATTICE, sector, row) + 0.5) * 50);
+					w.write(String.format(Locale.ROOT, "%s;Gemeente %s;Commune %s;%s;Sector %d;Secteur %d;%s;%d;%s;%d",
+						refnis, refnis, refnis, nis, sector, sector, 
+						(row % 2 == 0) ? "M" : "F", (row * 7) % 100, (row % 5 == 0) ? "ETR" : "BEL", population));
+					w.newLine();
+				}
+				if (sector % SECTORS_PER_MUNICIPALITY == 0) {
+					w.write(String.format(Locale.ROOT, "%s;Gemeente %s;Commune %s;%sZZZZ;Onbekend;Inconnu;M;50;BEL;%d",
+						refnis, refnis, refnis, refnis, 1 + sector % 7));
+					w.newLine();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param seed seed for the pseudo-random distortions and population numbers
+	 */
+	public SyntheticData(long seed) {
+		this.seed = seed;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import be.gov.data.populationperzip.reader.Dictionary;
+import be.gov.data.populationperzip.reader.PopulationTable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregate population per zip code and one or more dimensions (e.g. sex, age group)
+ * 
+ * @author Bart Hanssens
+ */
+public class Aggregator {
+	private final static Logger LOG = Logger.getLogger(Aggregator.class.getName());
+
+	// maximum number of combinations of zip code and dimension values
+	private final static long MAX_CELLS = 1 << 26;
+
+	private final PopulationTable table;
+
+	/**
+	 * Aggregate population per zip code and dimensions, in one pass over the rows of the table.
+	 * 
+	 * @param shares function returning the share of each zip code for a given sector ID, or null when there is no shape
+	 * @return map with zip code and dimension values (separated by ";") as key and population as value
+	 */
+	public Map<String, Double> aggregate(Function<String, Map<String, Double>> shares) {
+		Dictionary sectors = table.getSectors();
+		Dictionary zips = new Dictionary();
+
+		// zip code(s) and share of each sector
+		int[][] sectorZips = new int[sectors.size()][];
+		double[][] sectorShares = new double[sectors.size()][];
+
+		for (int s = 0; s < sectors.size(); s++) {
+			Map<String, Double> share = shares.apply(sectors.decode(s));
+			if (share == null) {
+				continue;
+			}
+			if (share.isEmpty()) {
+				// sectors without zip code are still counted, using an empty zip code
+				share = Collections.singletonMap("", 1.0);
+			}
+			sectorZips[s] = new int[share.size()];
+			sectorShares[s] = new double[share.size()];
+			int k = 0;
+			for (Map.Entry<String, Double> e: share.entrySet()) {
+				sectorZips[s][k] = zips.encode(e.getKey());
+				sectorShares[s][k] = e.getValue();
+				k++;
+			}
+		}
+
+		// one cell per combination of zip code and dimension values
+		int dims = table.getNames().length;
+		int[] strides = new int[dims];
+		long zipStride = 1;
+		for (int d = dims - 1; d >= 0; d--) {
+			strides[d] = (int) zipStride;
+			zipStride *= table.getDictionary(d).size();
+		}
+		long cellCount = zips.size() * zipStride;
+		if (cellCount > MAX_CELLS) {
+			throw new IllegalArgumentException("Too many combinations of zip code and dimensions: " + cellCount);
+		}
+		LOG.log(Level.INFO, "Aggregating {0} rows into {1} cells", new Object[] { table.rows(), cellCount });
+
+		double[] cells = new double[(int) cellCount];
+		for (int r = 0; r < table.rows(); r++) {
+			int s = table.sector(r);
+			int pop = table.population(r);
+			if (sectorZips[s] == null || pop == 0) {
+				continue;
+			}
+			int offset = 0;
+			for (int d = 0; d < dims; d++) {
+				offset += table.code(d, r) * strides[d];
+			}
+			for (int k = 0; k < sectorZips[s].length; k++) {
+				cells[(int) (sectorZips[s][k] * zipStride) + offset] += pop * sectorShares[s][k];
+			}
+		}
+
+		Map<String, Double> result = new HashMap<>();
+		StringBuilder key = new StringBuilder();
+		for (int c = 0; c < cells.length; c++) {
+			if (cells[c] == 0) {
+				continue;
+			}
+			key.setLength(0);
+			key.append(zips.decode((int) (c / zipStride)));
+			int rem = (int) (c % zipStride);
+			for (int d = 0; d < dims; d++) {
+				key.append(';').append(table.getDictionary(d).decode(rem / strides[d]));
+				rem %= strides[d];
+			}
+			result.put(key.toString(), cells[c]);
+		}
+		return result;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param table population table
+	 */
+	public Aggregator(PopulationTable table) {
+		this.table = table;
+	}
+}
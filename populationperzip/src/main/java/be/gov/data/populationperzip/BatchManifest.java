@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Manifest for processing multiple years in one run.
+ * Each line contains the year, the sectors file and the population file, separated by ";", e.g.
+ * 
+ * <pre>
+ * 2019;sh_statbel_statistical_sectors_20190101.geojson;OPENDATA_SECTOREN_2019.txt
+ * 2020;sh_statbel_statistical_sectors_20200101.geojson;OPENDATA_SECTOREN_2020.txt
+ * </pre>
+ * 
+ * Relative file names are resolved against the directory of the manifest.
+ * Empty lines and lines starting with "#" are ignored.
+ * 
+ * @author Bart Hanssens
+ */
+public class BatchManifest {
+	/**
+	 * Input files for one year
+	 */
+	public static class Entry {
+		private final String year;
+		private final Path sectorFile;
+		private final Path populationFile;
+
+		/**
+		 * Get the year
+		 * 
+		 * @return year
+		 */
+		public String getYear() {
+			return year;
+		}
+
+		/**
+		 * Get the statistical sectors file
+		 * 
+		 * @return path
+		 */
+		public Path getSectorFile() {
+			return sectorFile;
+		}
+
+		/**
+		 * Get the population file
+		 * 
+		 * @return path
+		 */
+		public Path getPopulationFile() {
+			return populationFile;
+		}
+
+		/**
+		 * Constructor
+		 * 
+		 * @param year year or null (single run)
+		 * @param sectorFile statistical sectors file
+		 * @param populationFile population file
+		 */
+		public Entry(String year, Path sectorFile, Path populationFile) {
+			this.year = year;
+			this.sectorFile = sectorFile;
+			this.populationFile = populationFile;
+		}
+	}
+
+	/**
+	 * Read the manifest
+	 * 
+	 * @param file manifest file
+	 * @return list of entries, in the same order as the file
+	 * @throws IOException when the file cannot be read or a line is invalid
+	 */
+	public static List<Entry> read(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		Set<String> years = new HashSet<>();
+		Path dir = file.toAbsolutePath().getParent();
+
+		try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			int nr = 0;
+			for (String line = r.readLine(); line != null; line = r.readLine()) {
+				nr++;
+				line = line.strip();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] parts = line.split(";");
+				if (parts.length != 3) {
+					throw new IOException("Expected year;sectors;population on line " + nr + " of " + file);
+				}
+				String year = parts[0].strip();
+				if (!years.add(year)) {
+					throw new IOException("Duplicate year " + year + " on line " + nr + " of " + file);
+				}
+				entries.add(new Entry(year, dir.resolve(parts[1].strip()), dir.resolve(parts[2].strip())));
+			}
+		}
+		if (entries.isEmpty()) {
+			throw new IOException("No entries in " + file);
+		}
+		return entries;
+	}
+}
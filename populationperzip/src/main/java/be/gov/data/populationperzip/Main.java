@@ -25,26 +25,40 @@
  */
 package be.gov.data.populationperzip;
 
+import be.gov.data.populationperzip.locator.AreaApportioner;
+import be.gov.data.populationperzip.locator.GridLocator;
+import be.gov.data.populationperzip.locator.PostalLocator;
+import be.gov.data.populationperzip.reader.FastSectorReader;
+import be.gov.data.populationperzip.reader.PopulationMap;
 import be.gov.data.populationperzip.reader.PopulationReader;
+import be.gov.data.populationperzip.reader.PopulationTable;
 import be.gov.data.populationperzip.reader.PostalReader;
 import be.gov.data.populationperzip.reader.SectorReader;
-import java.io.BufferedWriter;
+import be.gov.data.populationperzip.server.LookupServer;
+import be.gov.data.populationperzip.writer.ResultTable;
+import be.gov.data.populationperzip.writer.ResultWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 import picocli.CommandLine;
 
 import picocli.CommandLine.Command;
@@ -64,15 +78,102 @@ public class Main implements Callable<Integer> {
 	@Option(names = {"-s", "--sectors"}, description = "Statistical sectors file (GeoJSON)")
     private Path sectorFile;
 
-	@Option(names = {"-p", "--population"}, required = true, arity = "1", description = "Population file (TXT)")
+	@Option(names = {"-p", "--population"}, arity = "1", description = "Population file (TXT)")
     private Path populationFile;
 
 	@Option(names = {"-z", "--zipcode"}, required = true, arity = "1", description = "ZIPcode file (SHP)")
     private Path zipcodeFile;
 
-	@Option(names = {"-o", "--output"}, required = true, arity = "1", description = "Output file (CSV)")
+	@Option(names = {"-o", "--output"}, arity = "1", description = "Output file (CSV)")
     private Path outFile;
 
+	@Option(names = {"-l", "--locator"}, description = "Point-in-polygon engine: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private PostalLocator.Type locatorType = PostalLocator.Type.PREPARED;
+
+	@Option(names = {"--grid-cell-size"}, description = "Size of a grid cell for the grid locator (default: ${DEFAULT-VALUE})")
+    private double gridCellSize = GridLocator.DEFAULT_CELL_SIZE;
+
+	@Option(names = {"--grid-file"}, 
+			description = "Binary file for the grid locator, the grid is created and written to this file if it does not exist")
+    private Path gridFile;
+
+	@Option(names = {"-t", "--threads"}, description = "Number of threads for merging postal districts and mapping sectors to zip codes (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+
+	@Option(names = {"-a", "--apportion"}, description = "Apportion population using: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private Apportion apportion = Apportion.POINT;
+
+	@Option(names = {"-m", "--mmap"}, description = "Read population file using memory mapping, in parallel when using multiple threads")
+    private boolean mmap = false;
+
+	@Option(names = {"-g", "--group-by"}, split = ",", 
+			description = "Extra columns in the population file to group by, e.g. CD_SEX,CD_AGE/10 (age groups of 10 years)")
+    private List<String> groupBy;
+
+	@Option(names = {"-c", "--cache"}, description = "Cache directory for the mapping of sectors to zip codes")
+    private Path cacheDir;
+
+	@Option(names = {"-f", "--fast-geojson"}, description = "Read sectors file using a streaming GeoJSON parser instead of GeoTools")
+    private boolean fastGeojson = false;
+
+	@Option(names = {"--metrics"}, 
+			description = "Write time and memory used per phase next to the output file: ${COMPLETION-CANDIDATES}")
+    private PhaseMetrics.Format metricsFormat;
+
+	@Option(names = {"-b", "--batch"}, 
+			description = "Manifest file with year, sectors and population file per line, instead of -s and -p")
+    private Path batchFile;
+
+	@Option(names = {"--long"}, 
+			description = "In batch mode, write all years to one file with an extra Year column, instead of one file per year")
+    private boolean longFormat = false;
+
+	@Option(names = {"--serve"}, 
+			description = "Start HTTP lookup service on this port, instead of writing results (-s is optional, -p is not used)")
+    private Integer servePort;
+
+	@Option(names = {"--format"}, 
+			description = "Output format: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private ResultWriter.Format outputFormat = ResultWriter.Format.CSV;
+
+	@Option(names = {"--buffer-size"}, description = "Size of the output buffer in bytes (default: ${DEFAULT-VALUE})")
+    private int bufferSize = 1 << 20;
+
+	private final PhaseMetrics metrics = new PhaseMetrics();
+
+	// postal districts and lookup structures, only loaded once (also in batch mode)
+	private Map<String, MultiPolygon> zipcodes;
+	private PostalLocator locator;
+	private AreaApportioner apportioner;
+
+	// results for sector shapes that were already mapped in a previous year (batch mode)
+	private final Map<Geometry, String> zipMemo = new HashMap<>();
+	private final Map<Geometry, Map<String, Double>> shareMemo = new HashMap<>();
+
+	// year being processed, or null
+	private String year;
+
+	/**
+	 * Assign the whole population of a sector to the zip code of the interior point of the sector,
+	 * or split the population over the zip codes based on the overlapping area
+	 */
+	public enum Apportion { POINT, AREA }
+
+	/**
+	 * Results for one year
+	 */
+	private static class Output {
+		private final Map<String, Integer> results;
+		private final Map<String, Double> fractions;
+		private final String keyHeader;
+
+		private Output(Map<String, Integer> results, Map<String, Double> fractions, String keyHeader) {
+			this.results = results;
+			this.fractions = fractions;
+			this.keyHeader = keyHeader;
+		}
+	}
+
 	
 	/**
 	 * Check if input file exist and in the expected file format
@@ -96,109 +197,450 @@ public class Main implements Callable<Integer> {
 	/**
 	 * Find zip code for a given statistical sector
 	 * 
-	 * @param zipcodes map of all zip codes
+	 * @param locator locator for all zip codes
 	 * @param sector center of the sector
-	 * @return zipcode as a map entry
+	 * @return zipcode or empty string
 	 */
-	private Map.Entry<String,String> findZipCode(Map<String, MultiPolygon> zipcodes, Map.Entry<String, Point> sector) {
-		Optional<Map.Entry<String, MultiPolygon>> zip = zipcodes.entrySet().stream()
-				.filter(e -> sector.getValue().within(e.getValue()))
-				.findFirst();
-		if (!zip.isPresent()) {
+	String findZipCode(PostalLocator locator, Map.Entry<String, Point> sector) {
+		String zip = locator.locate(sector.getValue());
+		if (zip == null) {
 			LOG.log(Level.WARNING, "No zipcode for sector {0} {1}", 
 									new Object[] { sector.getKey(), sector.getValue().toText() });
 		}
-		return new HashMap.SimpleEntry<>(sector.getKey(), zip.isPresent() ? zip.get().getKey() : "");
+		return (zip != null) ? zip : "";
 	}
-	
 
 	/**
-	 * Find population for a given statistical sector
+	 * Find the zip codes overlapping with a given statistical sector
 	 * 
-	 * @param population population per sector
-	 * @param sector statistical sector
-	 * @return population as a map entry
+	 * @param apportioner apportioner for all zip codes
+	 * @param sector shape of the sector
+	 * @return share of each zip code, or empty map
 	 */
-	private Map.Entry<String,Integer> findPopulation(Map<String, Integer> population, Map.Entry<String, String> sector) {
-		Optional<Map.Entry<String, Integer>> pop = population.entrySet().stream()
-				.filter(e -> e.getKey().equals(sector.getKey()))
-				.findFirst();
-		if (!pop.isPresent()) {
-			LOG.log(Level.WARNING, "No population sector for {0}", sector.getKey());
+	private Map<String, Double> findShares(AreaApportioner apportioner, Map.Entry<String, Geometry> sector) {
+		Map<String, Double> shares = apportioner.apportion(sector.getValue());
+		if (shares.isEmpty()) {
+			LOG.log(Level.WARNING, "No zipcode for sector {0}", sector.getKey());
 		}
-		return new HashMap.SimpleEntry<>(sector.getValue(), pop.isPresent() ? pop.get().getValue() : 0);
+		return shares;
 	}
 
 	/**
-	 * Find population sectors not listed in the statistical sectors shapefile.
-	 * This is due to the people who cannot be "assigned" to a specific sector, often a fake "ZZZZ" sector is used
+	 * Map each sector to one or more zip codes
 	 * 
-	 * @param population population per sector
-	 * @param sector statistical sectors
+	 * @param <G> type of sector shape
+	 * @param <T> type of the result
+	 * @param sectors statistical sectors
+	 * @param fun mapping function
+	 * @return result per sector ID
+	 * @throws IOException 
 	 */
-	private void findMissing(Map<String, Integer> population, Map<String, Point> sector) {
-		Set<String> unmapped = population.keySet();
-		unmapped.removeAll(sector.keySet());
-		
-		for(String k: unmapped) {
-			LOG.log(Level.WARNING, "No shape for sector {0} with population {1}", new Object[] { k, population.get(k) });
+	<G, T> Map<String, T> mapSectors(Map<String, G> sectors, 
+											Function<Map.Entry<String, G>, T> fun) throws IOException {
+		if (threads <= 1) {
+			return sectors.entrySet().stream()
+						.collect(Collectors.toMap(e -> e.getKey(), fun));
 		}
+
+		LOG.log(Level.INFO, "Mapping sectors using {0} threads", threads);
+
+		return Parallel.submit(threads, () -> sectors.entrySet().parallelStream()
+						.collect(Collectors.toConcurrentMap(e -> e.getKey(), fun)));
 	}
 
 	/**
-	 * Write the results to a file
+	 * Start measuring a phase, adding the year (if any) to the name of the phase
 	 * 
-	 * @param results 
+	 * @param name name of the phase
+	 * @return phase
 	 */
-	private void writeResults(Map<String, Integer> results, Path file) {
-		List<String[]> rows = results.entrySet().stream()
-			.map(e -> new String[] { e.getKey(), e.getValue().toString() })
-			.sorted((a,b) -> a[0].compareTo(b[0]))
-			.collect(Collectors.toList());
-		
-		try(BufferedWriter w = Files.newBufferedWriter(file)) {
-			LOG.log(Level.INFO, "Writing results to {0}", file);
+	private PhaseMetrics.Phase startPhase(String name) {
+		return metrics.start((year == null) ? name : name + " " + year);
+	}
+
+	/**
+	 * Read postal districts file, only the first time
+	 * 
+	 * @return shape per zip code
+	 * @throws IOException 
+	 */
+	private Map<String, MultiPolygon> getZipcodes() throws IOException {
+		if (zipcodes == null) {
+			try (PhaseMetrics.Phase phase = metrics.start("read postal")) {
+				zipcodes = new PostalReader(threads).read(zipcodeFile);
+				phase.count(zipcodes.size());
+			}
+		}
+		return zipcodes;
+	}
+
+	/**
+	 * Create the point-in-polygon engine.
+	 * For the grid locator, the grid is read from the grid file (if any) instead of reading the postal districts.
+	 * 
+	 * @return locator
+	 * @throws IOException 
+	 */
+	private PostalLocator createLocator() throws IOException {
+		if (locatorType != PostalLocator.Type.GRID) {
+			return PostalLocator.create(locatorType, getZipcodes());
+		}
+		if (gridFile != null && Files.exists(gridFile)) {
+			return GridLocator.read(gridFile);
+		}
+
+		Map<String, MultiPolygon> zipcodes = getZipcodes();
+		try (PhaseMetrics.Phase phase = metrics.start("create grid")) {
+			GridLocator grid = new GridLocator(zipcodes, gridCellSize);
+			phase.count(grid.boundaryCells());
+			if (gridFile != null) {
+				grid.write(gridFile);
+			}
+			return grid;
+		}
+	}
+
+	/**
+	 * Read the full shape of each sector
+	 * 
+	 * @param sectorFile statistical sectors file
+	 * @return shape per sector ID
+	 * @throws IOException 
+	 */
+	private Map<String, Geometry> readSectorGeometries(Path sectorFile) throws IOException {
+		try (PhaseMetrics.Phase phase = startPhase("read sectors")) {
+			Map<String, Geometry> sectors = fastGeojson ? new FastSectorReader().readGeometries(sectorFile)
+														: new SectorReader().readGeometries(sectorFile);
+			phase.count(sectors.size());
+			return sectors;
+		}
+	}
+
+	/**
+	 * Map each sector to one or more zip codes, but only once for each distinct shape.
+	 * Results of shapes already mapped (e.g. for another year) are reused, 
+	 * shapes are compared using their exact coordinates.
+	 * 
+	 * @param <T> type of the result
+	 * @param sectors statistical sectors
+	 * @param memo results of shapes already mapped, will be updated
+	 * @param fun mapping function
+	 * @return result per sector ID
+	 * @throws IOException 
+	 */
+	private <T> Map<String, T> mapDistinct(Map<String, Geometry> sectors, Map<Geometry, T> memo,
+										Function<Map.Entry<String, Geometry>, T> fun) throws IOException {
+		// one sector ID for each new shape
+		Map<Geometry, String> distinct = new HashMap<>();
+		for (Map.Entry<String, Geometry> e: sectors.entrySet()) {
+			if (!memo.containsKey(e.getValue())) {
+				distinct.putIfAbsent(e.getValue(), e.getKey());
+			}
+		}
+		Map<String, Geometry> todo = new HashMap<>();
+		distinct.forEach((geom, nis) -> todo.put(nis, geom));
+
+		Map<String, T> mapped = mapSectors(todo, fun);
+		todo.forEach((nis, geom) -> memo.put(geom, mapped.get(nis)));
+		LOG.log(Level.INFO, "Mapped {0} new sector shapes, reused {1}", 
+								new Object[] { todo.size(), sectors.size() - todo.size() });
+
+		Map<String, T> result = new HashMap<>();
+		sectors.forEach((nis, geom) -> result.put(nis, memo.get(geom)));
+		return result;
+	}
+
+	/**
+	 * Read geo files and find the zip code of the interior point of each sector
+	 * 
+	 * @param sectorFile statistical sectors file
+	 * @return zip code per sector ID
+	 * @throws IOException 
+	 */
+	private Map<String, String> calculateZips(Path sectorFile) throws IOException {
+		if (locator == null) {
+			locator = createLocator();
+		}
+
+		if (batchFile == null) {
+			Map<String, Point> sectors;
+			try (PhaseMetrics.Phase phase = startPhase("read sectors")) {
+				sectors = fastGeojson ? new FastSectorReader().read(sectorFile)
+										: new SectorReader().read(sectorFile);
+				phase.count(sectors.size());
+			}
+
+			try (PhaseMetrics.Phase phase = startPhase("assign")) {
+				Map<String, String> sectorZips = mapSectors(sectors, e -> findZipCode(locator, e));
+				locator.logStats();
+				phase.count(sectorZips.size());
+				return sectorZips;
+			}
+		}
+
+		// batch mode: keep the full shapes, so shapes used in multiple years are only mapped once
+		Map<String, Geometry> sectors = readSectorGeometries(sectorFile);
+
+		try (PhaseMetrics.Phase phase = startPhase("assign")) {
+			Map<String, String> sectorZips = mapDistinct(sectors, zipMemo, 
+							e -> findZipCode(locator, Map.entry(e.getKey(), e.getValue().getInteriorPoint())));
+			locator.logStats();
+			phase.count(sectorZips.size());
+			return sectorZips;
+		}
+	}
 
-			w.write("Postal;Population");
-			w.newLine();
+	/**
+	 * Read geo files and split each sector based on the overlap with postal districts
+	 * 
+	 * @param sectorFile statistical sectors file
+	 * @return share of each zip code per sector ID
+	 * @throws IOException 
+	 */
+	private Map<String, Map<String, Double>> calculateShares(Path sectorFile) throws IOException {
+		Map<String, MultiPolygon> zipcodes = getZipcodes();
+		Map<String, Geometry> sectors = readSectorGeometries(sectorFile);
 
-			for (String[] row: rows) {
-				w.write(row[0] + ";" + row[1]);
-				w.newLine();
+		try (PhaseMetrics.Phase phase = startPhase("assign")) {
+			if (apportioner == null) {
+				apportioner = new AreaApportioner(zipcodes);
 			}
+			Function<Map.Entry<String, Geometry>, Map<String, Double>> fun = e -> findShares(apportioner, e);
+			Map<String, Map<String, Double>> shares = (batchFile == null) ? mapSectors(sectors, fun) 
+																		: mapDistinct(sectors, shareMemo, fun);
+			phase.count(shares.size());
+			return shares;
+		}
+	}
+
+	/**
+	 * Write the results to a file
+	 * 
+	 * @param results population per zip code (and dimensions)
+	 * @param fractions fractional population per zip code, or null
+	 * @param keyHeader column name(s) of the key
+	 * @param file output file
+	 */
+	private void writeResults(Map<String, Integer> results, Map<String, Double> fractions, String keyHeader, Path file) {
+		try (PhaseMetrics.Phase phase = startPhase("write")) {
+			phase.count(results.size());
+			LOG.log(Level.INFO, "Writing results to {0}", file);
+			ResultWriter.create(outputFormat, bufferSize).write(ResultTable.of(results, fractions), keyHeader, file);
 		} catch (IOException ioe) {
 			LOG.log(Level.SEVERE, "Could not write results to {0}: {1}", new Object[] { file, ioe.getMessage() });
 		}
 	}
-	
+
 		
+	/**
+	 * Read population and sectors file of one year, and calculate the population per zip code
+	 * 
+	 * @param entry input files
+	 * @return population per zip code (and dimensions)
+	 * @throws IOException 
+	 */
+	private Output process(BatchManifest.Entry entry) throws IOException {
+		// read all files
+		PopulationReader populationReader = new PopulationReader();
+		PopulationTable table = null;
+		PopulationMap population;
+		String keyHeader = "Postal";
+
+		try (PhaseMetrics.Phase phase = startPhase("read population")) {
+			if (groupBy != null && !groupBy.isEmpty()) {
+				// keep the extra columns, but also calculate the totals per sector
+				table = populationReader.readTable(entry.getPopulationFile(), groupBy);
+				population = table.totals();
+				keyHeader += ";" + String.join(";", table.getNames());
+			} else {
+				population = mmap ? populationReader.readMapped(entry.getPopulationFile(), threads)
+									: populationReader.read(entry.getPopulationFile());
+			}
+			phase.count(population.size());
+		}
+
+		// the mapping of sectors to zip codes only depends on the geo files
+		MappingCache cache = null;
+		if (cacheDir != null) {
+			Path dbf = zipcodeFile.resolveSibling(zipcodeFile.getFileName().toString().replaceAll("\\.shp$", ".dbf"));
+			cache = Files.exists(dbf) ? new MappingCache(cacheDir, apportion.name(), entry.getSectorFile(), zipcodeFile, dbf)
+										: new MappingCache(cacheDir, apportion.name(), entry.getSectorFile(), zipcodeFile);
+		}
+
+		PopulationJoin join = new PopulationJoin();
+
+		if (apportion == Apportion.AREA) {
+			Map<String, Map<String, Double>> shares;
+			if (cache != null && cache.exists()) {
+				try (PhaseMetrics.Phase phase = startPhase("read cache")) {
+					shares = cache.readShares();
+					phase.count(shares.size());
+				}
+			} else {
+				shares = calculateShares(entry.getSectorFile());
+				if (cache != null) {
+					cache.writeShares(shares);
+				}
+			}
+
+			Map<String, Double> fractions;
+			try (PhaseMetrics.Phase phase = startPhase("aggregate")) {
+				fractions = join.joinShares(shares, population);
+				join.logStats();
+
+				if (table != null) {
+					fractions = new Aggregator(table).aggregate(shares::get);
+				}
+				phase.count(fractions.size());
+			}
+			return new Output(PopulationJoin.round(fractions), fractions, keyHeader);
+		} else {
+			Map<String, String> sectorZips;
+			if (cache != null && cache.exists()) {
+				try (PhaseMetrics.Phase phase = startPhase("read cache")) {
+					sectorZips = cache.readZips();
+					phase.count(sectorZips.size());
+				}
+			} else {
+				sectorZips = calculateZips(entry.getSectorFile());
+				if (cache != null) {
+					cache.writeZips(sectorZips);
+				}
+			}
+
+			// map the info based on sector ID
+			Map<String, Integer> result;
+			try (PhaseMetrics.Phase phase = startPhase("aggregate")) {
+				result = join.join(sectorZips, population);
+				join.logStats();
+
+				if (table != null) {
+					Map<String, Double> aggr = new Aggregator(table).aggregate(s -> sectorZips.containsKey(s) 
+													? Collections.singletonMap(sectorZips.get(s), 1.0) : null);
+					result = PopulationJoin.round(aggr);
+				}
+				phase.count(result.size());
+			}
+			return new Output(result, null, keyHeader);
+		}
+	}
+
+	/**
+	 * Get the output file for a given year, e.g. population_2020.csv
+	 * 
+	 * @param year year
+	 * @return output file
+	 */
+	private Path yearFile(String year) {
+		String name = outFile.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		name = (dot > 0) ? name.substring(0, dot) + "_" + year + name.substring(dot) : name + "_" + year;
+		return outFile.resolveSibling(name);
+	}
+
+	/**
+	 * Load postal districts (and sectors, if any) and start the HTTP lookup service, until the process is stopped
+	 * 
+	 * @return exit code
+	 * @throws Exception 
+	 */
+	private int serve() throws Exception {
+		if (!checkFile(zipcodeFile, "shp")) {
+			return -1;
+		}
+		locator = createLocator();
+
+		Map<String, String> sectorZips = Collections.emptyMap();
+		if (sectorFile != null) {
+			if (!checkFile(sectorFile, "geojson")) {
+				return -1;
+			}
+			sectorZips = calculateZips(sectorFile);
+		}
+
+		MathTransform transform = null;
+		CoordinateReferenceSystem crs = new PostalReader().getCRS(zipcodeFile.toFile());
+		if (crs != null) {
+			transform = CRS.findMathTransform(DefaultGeographicCRS.WGS84, crs, true);
+		} else {
+			LOG.log(Level.WARNING, "Coordinate reference system of {0} unknown, only x/y lookups", zipcodeFile);
+		}
+
+		LookupServer server = new LookupServer(servePort, Math.max(threads, 2), locator, transform, sectorZips);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.start();
+
+		Thread.currentThread().join();
+		return 0;
+	}
+
 	@Override
     public Integer call() throws Exception {
-		if (! (checkFile(sectorFile, "geojson") && checkFile(populationFile, "txt") && checkFile(zipcodeFile, "shp"))) {
+		if (servePort != null) {
+			return serve();
+		}
+		if (outFile == null) {
+			LOG.log(Level.SEVERE, "Output file is required, unless the lookup service is started");
 			return -1;
 		}
-		// read all files
-		PostalReader postalReader = new PostalReader();
-		Map<String, MultiPolygon> zipcodes = postalReader.read(zipcodeFile);
 
-		PopulationReader populationReader = new PopulationReader();
-		Map<String, Integer> population = populationReader.read(populationFile);
-		
-		SectorReader sectorReader = new SectorReader();
-		Map<String, Point> sectors = sectorReader.read(sectorFile);
+		List<BatchManifest.Entry> entries;
+		if (batchFile != null) {
+			if (!batchFile.toFile().exists()) {
+				LOG.log(Level.SEVERE, "File {0} does not exist", batchFile);
+				return -1;
+			}
+			entries = BatchManifest.read(batchFile);
+		} else {
+			if (sectorFile == null || populationFile == null) {
+				LOG.log(Level.SEVERE, "Sectors and population file are required, unless a batch manifest is used");
+				return -1;
+			}
+			entries = Collections.singletonList(new BatchManifest.Entry(null, sectorFile, populationFile));
+		}
 
-		// map the info based on sector ID
-		Map<String, Integer> result = sectors.entrySet().stream()
-										.map(e -> findZipCode(zipcodes, e))
-										.map(e -> findPopulation(population, e))
-										.filter(e -> e.getValue() != 0) // remove uninhabitated sectors
-										.collect(Collectors.groupingBy(e -> e.getKey(),
-												Collectors.summingInt(e -> e.getValue())));
+		if (!checkFile(zipcodeFile, "shp")) {
+			return -1;
+		}
+		for (BatchManifest.Entry entry: entries) {
+			if (! (checkFile(entry.getSectorFile(), "geojson") && checkFile(entry.getPopulationFile(), "txt"))) {
+				return -1;
+			}
+		}
 
-		findMissing(population, sectors);
+		// long format: all years in one file
+		Map<String, Integer> allResults = new HashMap<>();
+		Map<String, Double> allFractions = new HashMap<>();
+		String allHeader = null;
 
-		writeResults(result, outFile);
+		for (BatchManifest.Entry entry: entries) {
+			year = entry.getYear();
+			LOG.log(Level.INFO, "Processing {0}", (year != null) ? year : entry.getPopulationFile());
 
+			Output output = process(entry);
+			if (year != null && longFormat) {
+				String prefix = year + ";";
+				output.results.forEach((k, v) -> allResults.put(prefix + k, v));
+				if (output.fractions != null) {
+					output.fractions.forEach((k, v) -> allFractions.put(prefix + k, v));
+				}
+				allHeader = "Year;" + output.keyHeader;
+			} else {
+				writeResults(output.results, output.fractions, output.keyHeader, 
+								(year != null) ? yearFile(year) : outFile);
+			}
+		}
+		year = null;
+
+		if (allHeader != null) {
+			writeResults(allResults, allFractions.isEmpty() ? null : allFractions, allHeader, outFile);
+		}
+
+		metrics.logStats();
+		if (metricsFormat != null) {
+			String ext = metricsFormat.name().toLowerCase(Locale.ROOT);
+			metrics.write(outFile.resolveSibling(outFile.getFileName() + ".metrics." + ext), metricsFormat);
+		}
         return 0;
     }
 
@@ -208,7 +650,7 @@ public class Main implements Callable<Integer> {
 	 * @param args 
 	 */
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new Main()).execute(args);
+        int exitCode = new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
         System.exit(exitCode);
     }
 }
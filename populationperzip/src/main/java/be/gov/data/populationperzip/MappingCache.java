@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the mapping of statistical sectors to zip codes.
+ * The mapping only depends on the geo files (and the apportion mode), 
+ * so the cache file name is based on a hash of the contents of these files.
+ * 
+ * @author Bart Hanssens
+ */
+public class MappingCache {
+	private final static Logger LOG = Logger.getLogger(MappingCache.class.getName());
+
+	private final Path file;
+
+	/**
+	 * Calculate hash of the contents of one or more files
+	 * 
+	 * @param prefix prefix to include in the hash
+	 * @param files files
+	 * @return hex encoded hash
+	 * @throws IOException 
+	 */
+	private static String hash(String prefix, Path... files) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+		md.update(prefix.getBytes(StandardCharsets.UTF_8));
+
+		byte[] buf = new byte[1 << 16];
+		for (Path f: files) {
+			try (InputStream is = Files.newInputStream(f)) {
+				int len;
+				while ((len = is.read(buf)) > 0) {
+					md.update(buf, 0, len);
+				}
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b: md.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Check if the mapping is in the cache
+	 * 
+	 * @return true if cached
+	 */
+	public boolean exists() {
+		return Files.isRegularFile(file);
+	}
+
+	/**
+	 * Read the share of each zip code per sector from the cache
+	 * 
+	 * @return share of each zip code per sector ID
+	 * @throws IOException 
+	 */
+	public Map<String, Map<String, Double>> readShares() throws IOException {
+		LOG.log(Level.INFO, "Reading cached mapping {0}", file);
+
+		Map<String, Map<String, Double>> map = new HashMap<>();
+		try (Stream<String> lines = Files.lines(file)) {
+			lines.map(l -> l.split(";", -1))
+				.forEach(row -> {
+					Map<String, Double> shares = map.computeIfAbsent(row[0], k -> new HashMap<>());
+					// empty zip code: no zip code found for this sector
+					if (!row[1].isEmpty()) {
+						shares.put(row[1], Double.valueOf(row[2]));
+					}
+				});
+		}
+		return map;
+	}
+
+	/**
+	 * Read the zip code per sector from the cache
+	 * 
+	 * @return zip code per sector ID
+	 * @throws IOException 
+	 */
+	public Map<String, String> readZips() throws IOException {
+		LOG.log(Level.INFO, "Reading cached mapping {0}", file);
+
+		Map<String, String> map = new HashMap<>();
+		try (Stream<String> lines = Files.lines(file)) {
+			lines.map(l -> l.split(";", -1))
+				.forEach(row -> map.put(row[0], row[1]));
+		}
+		return map;
+	}
+
+	/**
+	 * Write the share of each zip code per sector to the cache
+	 * 
+	 * @param shares share of each zip code per sector ID
+	 * @throws IOException 
+	 */
+	public void writeShares(Map<String, Map<String, Double>> shares) throws IOException {
+		Path tmp = Files.createTempFile(file.getParent(), "mapping", ".tmp");
+		try (BufferedWriter w = Files.newBufferedWriter(tmp)) {
+			for (Map.Entry<String, Map<String, Double>> sector: shares.entrySet()) {
+				if (sector.getValue().isEmpty()) {
+					w.write(sector.getKey() + ";;");
+					w.newLine();
+				}
+				for (Map.Entry<String, Double> share: sector.getValue().entrySet()) {
+					w.write(sector.getKey() + ";" + share.getKey() + ";" + share.getValue());
+					w.newLine();
+				}
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.log(Level.INFO, "Mapping written to cache {0}", file);
+	}
+
+	/**
+	 * Write the zip code per sector to the cache
+	 * 
+	 * @param zips zip code per sector ID
+	 * @throws IOException 
+	 */
+	public void writeZips(Map<String, String> zips) throws IOException {
+		Path tmp = Files.createTempFile(file.getParent(), "mapping", ".tmp");
+		try (BufferedWriter w = Files.newBufferedWriter(tmp)) {
+			for (Map.Entry<String, String> e: zips.entrySet()) {
+				w.write(e.getKey() + ";" + e.getValue() + ";1.0");
+				w.newLine();
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOG.log(Level.INFO, "Mapping written to cache {0}", file);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param dir cache directory
+	 * @param mode mapping mode, e.g. point or area
+	 * @param files input files the mapping depends on
+	 * @throws IOException 
+	 */
+	public MappingCache(Path dir, String mode, Path... files) throws IOException {
+		Files.createDirectories(dir);
+		this.file = dir.resolve(mode.toLowerCase(Locale.ROOT) + "-" + hash(mode, files) + ".csv");
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a task in a dedicated fork/join pool.
+ * Parallel streams started by the task use the threads of this pool instead of the common pool.
+ * The pool is shut down before returning, and the allocations of its workers are recorded in {@link PhaseMetrics}.
+ * 
+ * @author Bart Hanssens
+ */
+public final class Parallel {
+	/**
+	 * Worker thread recording its allocations when it ends
+	 */
+	private static class Worker extends ForkJoinWorkerThread {
+		@Override
+		protected void onTermination(Throwable exception) {
+			PhaseMetrics.retire();
+			super.onTermination(exception);
+		}
+
+		/**
+		 * Constructor
+		 * 
+		 * @param pool pool
+		 */
+		private Worker(ForkJoinPool pool) {
+			super(pool);
+		}
+	}
+
+	/**
+	 * Wait until all workers of a pool have ended
+	 * 
+	 * @param pool pool that has been shut down
+	 */
+	private static void awaitTermination(ForkJoinPool pool) {
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Run a task using a number of threads and wait for the result
+	 * 
+	 * @param <T> type of the result
+	 * @param threads number of threads
+	 * @param task task
+	 * @return result of the task
+	 * @throws IOException when the task failed or was interrupted
+	 */
+	public static <T> T submit(int threads, Callable<T> task) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1), Worker::new, null, false);
+		try {
+			return pool.submit(task).get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException(ie);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+		} finally {
+			pool.shutdown();
+			awaitTermination(pool);
+		}
+	}
+
+	/**
+	 * Constructor
+	 */
+	private Parallel() {
+	}
+}
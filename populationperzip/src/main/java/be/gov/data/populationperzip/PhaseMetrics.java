@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wall time, CPU time, allocated bytes and number of items for each phase of a run
+ * (e.g. reading a file, mapping sectors to zip codes...)
+ * 
+ * CPU time is the time of the whole process, including other threads.
+ * Allocated bytes are counted for all threads that are still alive at the end of the phase,
+ * and for threads that ended during the phase after calling {@link #retire()}, like the workers of {@link Parallel}.
+ * 
+ * @author Bart Hanssens
+ */
+public class PhaseMetrics {
+	private final static Logger LOG = Logger.getLogger(PhaseMetrics.class.getName());
+
+	/**
+	 * Format of the report
+	 */
+	public enum Format { JSON, CSV }
+
+	// bytes allocated by each thread that has ended
+	private final static Map<Long, Long> RETIRED = new ConcurrentHashMap<>();
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private final List<Result> results = new ArrayList<>();
+
+	/**
+	 * Metrics of a phase that has ended
+	 */
+	private static class Result {
+		private final String name;
+		private final long wall;
+		private final long cpu;
+		private final long allocated;
+		private final long count;
+
+		private Result(String name, long wall, long cpu, long allocated, long count) {
+			this.name = name;
+			this.wall = wall;
+			this.cpu = cpu;
+			this.allocated = allocated;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Running phase, metrics are recorded when the phase is closed
+	 */
+	public class Phase implements AutoCloseable {
+		private final String name;
+		private final PhaseEvent event;
+		private final long wallStart;
+		private final long cpuStart;
+		private final Map<Long, Long> allocatedStart;
+		private long count;
+
+		/**
+		 * Set the number of items processed during this phase
+		 * 
+		 * @param count number of items
+		 */
+		public void count(long count) {
+			this.count = count;
+		}
+
+		@Override
+		public void close() {
+			long wall = System.nanoTime() - wallStart;
+			long cpu = (cpuStart >= 0) ? processCpuTime() - cpuStart : -1;
+			long allocated = -1;
+
+			if (allocatedStart != null) {
+				allocated = 0;
+				for (Map.Entry<Long, Long> e: allocatedBytes().entrySet()) {
+					allocated += e.getValue() - allocatedStart.getOrDefault(e.getKey(), 0L);
+				}
+			}
+			results.add(new Result(name, wall, cpu, allocated, count));
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = name;
+				event.count = count;
+				event.cpuTime = cpu;
+				event.allocated = allocated;
+				event.commit();
+			}
+		}
+
+		/**
+		 * Constructor
+		 * 
+		 * @param name name of the phase
+		 */
+		private Phase(String name) {
+			this.name = name;
+			this.allocatedStart = allocatedBytes();
+			this.cpuStart = processCpuTime();
+			this.event = new PhaseEvent();
+			this.event.begin();
+			this.wallStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Get the CPU time used by the process
+	 * 
+	 * @return time in nanoseconds or -1 when not supported
+	 */
+	private long processCpuTime() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	/**
+	 * Record the number of bytes allocated by the current thread, because it is about to end.
+	 * Otherwise the allocations of this thread are lost when the phase is closed.
+	 */
+	public static void retire() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			long id = Thread.currentThread().getId();
+			long bytes = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(id);
+			if (bytes >= 0) {
+				RETIRED.put(id, bytes);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of bytes allocated by each live or retired thread
+	 * 
+	 * @return map with thread ID as key and allocated bytes as value, or null when not supported
+	 */
+	private Map<Long, Long> allocatedBytes() {
+		if (! (threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+		if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+
+		long[] ids = bean.getAllThreadIds();
+		long[] bytes = bean.getThreadAllocatedBytes(ids);
+
+		// thread IDs are not reused, so retired threads can be combined with live threads
+		Map<Long, Long> map = new HashMap<>(RETIRED);
+		for (int i = 0; i < ids.length; i++) {
+			// -1 when thread is not alive anymore
+			if (bytes[i] >= 0) {
+				map.put(ids[i], bytes[i]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Start a phase, to be closed when the phase ends
+	 * 
+	 * @param name name of the phase
+	 * @return phase
+	 */
+	public Phase start(String name) {
+		return new Phase(name);
+	}
+
+	/**
+	 * Convert nanoseconds to milliseconds
+	 * 
+	 * @param nanos nanoseconds or -1
+	 * @return milliseconds or -1
+	 */
+	private static double millis(long nanos) {
+		return (nanos < 0) ? -1 : nanos / 1_000_000.0;
+	}
+
+	/**
+	 * Log the metrics of each phase
+	 */
+	public void logStats() {
+		for (Result r: results) {
+			LOG.log(Level.INFO, "Phase {0}: {1} items, {2} ms wall, {3} ms CPU, {4} bytes allocated", 
+				new Object[] { r.name, r.count, String.format(Locale.ROOT, "%.1f", millis(r.wall)), 
+								String.format(Locale.ROOT, "%.1f", millis(r.cpu)), r.allocated });
+		}
+	}
+
+	/**
+	 * Write the metrics of each phase as JSON
+	 * 
+	 * @param w writer
+	 * @throws IOException 
+	 */
+	private void writeJSON(BufferedWriter w) throws IOException {
+		w.write("{\n  \"phases\": [");
+		for (int i = 0; i < results.size(); i++) {
+			Result r = results.get(i);
+			w.write((i > 0) ? ",\n" : "\n");
+			w.write(String.format(Locale.ROOT, 
+				"    {\"phase\": \"%s\", \"wall_ms\": %.3f, \"cpu_ms\": %.3f, \"allocated_bytes\": %d, \"count\": %d}",
+				r.name.replace("\\", "\\\\").replace("\"", "\\\""), 
+				millis(r.wall), millis(r.cpu), r.allocated, r.count));
+		}
+		w.write("\n  ]\n}\n");
+	}
+
+	/**
+	 * Write the metrics of each phase as CSV
+	 * 
+	 * @param w writer
+	 * @throws IOException 
+	 */
+	private void writeCSV(BufferedWriter w) throws IOException {
+		w.write("Phase;Wall_ms;CPU_ms;Allocated_bytes;Count");
+		w.newLine();
+		for (Result r: results) {
+			w.write(String.format(Locale.ROOT, "%s;%.3f;%.3f;%d;%d", 
+									r.name, millis(r.wall), millis(r.cpu), r.allocated, r.count));
+			w.newLine();
+		}
+	}
+
+	/**
+	 * Write a report of the metrics.
+	 * Unsupported metrics are reported as -1.
+	 * 
+	 * @param file report file
+	 * @param format JSON or CSV
+	 * @throws IOException 
+	 */
+	public void write(Path file, Format format) throws IOException {
+		LOG.log(Level.INFO, "Writing metrics to {0}", file);
+
+		try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			if (format == Format.JSON) {
+				writeJSON(w);
+			} else {
+				writeCSV(w);
+			}
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import be.gov.data.populationperzip.reader.PopulationMap;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Join the population per statistical sector with the zip code of each sector, 
+ * using a hash lookup on the sector ID.
+ * 
+ * @author Bart Hanssens
+ */
+public class PopulationJoin {
+	private final static Logger LOG = Logger.getLogger(PopulationJoin.class.getName());
+
+	// people who cannot be "assigned" to a specific sector are assigned to a fake "ZZZZ" sector
+	public static final String PSEUDO_SECTOR = "ZZZZ";
+
+	private long matched = 0;
+	private long dropped = 0;
+	private long unlocated = 0;
+	private long unmatched = 0;
+	private long unmatchedPopulation = 0;
+	private long pseudo = 0;
+	private long pseudoPopulation = 0;
+	private long missing = 0;
+
+	/**
+	 * Check if the population of a sector can be added to a zip code, and keep track of the statistics
+	 * 
+	 * @param sector sector ID
+	 * @param shape true if there is a shape for this sector
+	 * @param population population of the sector
+	 * @return true if population has to be added
+	 */
+	private boolean accept(String sector, boolean shape, int population) {
+		if (!shape) {
+			if (sector.endsWith(PSEUDO_SECTOR)) {
+				LOG.log(Level.FINE, "Pseudo sector {0} with population {1}", new Object[] { sector, population });
+				pseudo++;
+				pseudoPopulation += population;
+			} else {
+				LOG.log(Level.WARNING, "No shape for sector {0} with population {1}", new Object[] { sector, population });
+				unmatched++;
+				unmatchedPopulation += population;
+			}
+			return false;
+		}
+		matched++;
+		if (population == 0) { 
+			// remove uninhabitated sectors
+			dropped++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Join population and zip codes, in one pass over the population
+	 * 
+	 * @param sectors zip code per sector ID
+	 * @param population population per sector ID
+	 * @return population per zip code
+	 */
+	public Map<String, Integer> join(Map<String, String> sectors, PopulationMap population) {
+		Map<String, Integer> result = new HashMap<>();
+
+		population.forEach((sector, pop) -> {
+			String zip = sectors.get(sector);
+			if (accept(sector, zip != null, pop)) {
+				if (zip.isEmpty()) {
+					// sectors without zip code are still counted, using an empty zip code
+					unlocated++;
+				}
+				result.merge(zip, pop, Integer::sum);
+			}
+		});
+		// sectors (shapes) without population
+		missing = sectors.size() - matched;
+		return result;
+	}
+
+	/**
+	 * Join population and zip codes, in one pass over the population.
+	 * The population of a sector is split over one or more zip codes.
+	 * 
+	 * @param sectors share of each zip code per sector ID
+	 * @param population population per sector ID
+	 * @return (fractional) population per zip code
+	 */
+	public Map<String, Double> joinShares(Map<String, Map<String, Double>> sectors, PopulationMap population) {
+		Map<String, Double> result = new HashMap<>();
+
+		population.forEach((sector, pop) -> {
+			Map<String, Double> shares = sectors.get(sector);
+			if (accept(sector, shares != null, pop)) {
+				if (shares.isEmpty()) {
+					unlocated++;
+					result.merge("", (double) pop, Double::sum);
+				}
+				for (Map.Entry<String, Double> share: shares.entrySet()) {
+					result.merge(share.getKey(), pop * share.getValue(), Double::sum);
+				}
+			}
+		});
+		missing = sectors.size() - matched;
+		return result;
+	}
+
+	/**
+	 * Round fractional population, using the largest remainder method.
+	 * The sum of the rounded values is equal to the (rounded) sum of the fractional values.
+	 * 
+	 * @param fractions fractional population per zip code
+	 * @return rounded population per zip code
+	 */
+	public static Map<String, Integer> round(Map<String, Double> fractions) {
+		Map<String, Integer> result = new HashMap<>();
+
+		double total = 0;
+		long sum = 0;
+		for (Map.Entry<String, Double> e: fractions.entrySet()) {
+			int floor = (int) Math.floor(e.getValue());
+			result.put(e.getKey(), floor);
+			total += e.getValue();
+			sum += floor;
+		}
+
+		// give the remaining persons to the zip codes with the largest remainder (and sort by code if equal)
+		List<String> remainders = fractions.entrySet().stream()
+			.sorted(Comparator.comparingDouble((Map.Entry<String, Double> e) -> e.getValue() - Math.floor(e.getValue()))
+								.reversed()
+								.thenComparing(e -> e.getKey()))
+			.map(e -> e.getKey())
+			.collect(Collectors.toList());
+
+		long remaining = Math.round(total) - sum;
+		for (int i = 0; i < remaining && i < remainders.size(); i++) {
+			result.merge(remainders.get(i), 1, Integer::sum);
+		}
+		return result;
+	}
+
+	/**
+	 * Log join statistics
+	 */
+	public void logStats() {
+		LOG.log(Level.INFO, "Join: {0} matched, {1} dropped (no population), {2} without zip code", 
+							new Object[] { matched, dropped, unlocated });
+		LOG.log(Level.INFO, "Join: {0} unmatched (population {1}), {2} pseudo sectors (population {3})", 
+							new Object[] { unmatched, unmatchedPopulation, pseudo, pseudoPopulation });
+		if (missing > 0) {
+			LOG.log(Level.WARNING, "Join: {0} sectors without population", missing);
+		}
+	}
+}
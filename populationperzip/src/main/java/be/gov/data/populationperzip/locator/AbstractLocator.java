@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the number of lookups and candidate polygons tested.
+ * The counters are striped, so concurrent lookups do not contend on a single shared value.
+ * 
+ * @author Bart Hanssens
+ */
+public abstract class AbstractLocator implements PostalLocator {
+	private final static Logger LOG = Logger.getLogger(AbstractLocator.class.getName());
+
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder candidates = new LongAdder();
+
+	/**
+	 * Count a lookup
+	 * 
+	 * @param tested number of candidate polygons for this lookup
+	 */
+	protected void count(int tested) {
+		lookups.increment();
+		if (tested > 0) {
+			candidates.add(tested);
+		}
+	}
+
+	/**
+	 * Get number of postal districts
+	 * 
+	 * @return number of districts
+	 */
+	protected abstract int size();
+
+	@Override
+	public void logStats() {
+		long l = lookups.sum();
+		long c = candidates.sum();
+		LOG.log(Level.INFO, "{0}: {1} lookups, {2} candidates tested ({3} per lookup, {4} districts)", 
+							new Object[] { getClass().getSimpleName(), l, c, (l > 0) ? (double) c / l : 0, size() });
+	}
+}
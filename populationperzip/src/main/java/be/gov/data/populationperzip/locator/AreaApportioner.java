@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.TopologyException;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Split (the shape of) a statistical sector over the postal districts it overlaps with,
+ * based on the area of the overlap.
+ * 
+ * @author Bart Hanssens
+ */
+public class AreaApportioner {
+	private final static Logger LOG = Logger.getLogger(AreaApportioner.class.getName());
+
+	private final STRtree index = new STRtree();
+
+	/**
+	 * Calculate the area of the intersection of two shapes
+	 * 
+	 * @param postal postal district
+	 * @param sector statistical sector
+	 * @return area
+	 */
+	private double intersectionArea(Geometry postal, Geometry sector) {
+		try {
+			return postal.intersection(sector).getArea();
+		} catch (TopologyException te) {
+			// try again after fixing small errors in the shapes
+			LOG.log(Level.WARNING, "Topology problem, retrying with buffer(0): {0}", te.getMessage());
+			return postal.buffer(0).intersection(sector.buffer(0)).getArea();
+		}
+	}
+
+	/**
+	 * Calculate the share of each postal district in the area of a sector.
+	 * Only the postal districts with an overlapping bounding box are checked.
+	 * The shares are relative to the part of the sector that is covered by postal districts, so the sum is 1.
+	 * 
+	 * @param sector shape of the sector
+	 * @return map with zip code as key and share as value, empty if no postal district was found
+	 */
+	public Map<String, Double> apportion(Geometry sector) {
+		List<Map.Entry<String, PreparedGeometry>> found = index.query(sector.getEnvelopeInternal());
+		
+		Map<String, Double> areas = new HashMap<>();
+		double total = 0;
+
+		for (Map.Entry<String, PreparedGeometry> e: found) {
+			PreparedGeometry postal = e.getValue();
+			if (postal.covers(sector)) {
+				// most sectors are completely within one postal district, no need to calculate the overlap
+				return Collections.singletonMap(e.getKey(), 1.0);
+			}
+			if (postal.intersects(sector)) {
+				double area = intersectionArea(postal.getGeometry(), sector);
+				if (area > 0) {
+					areas.merge(e.getKey(), area, Double::sum);
+					total += area;
+				}
+			}
+		}
+
+		for (Map.Entry<String, Double> e: areas.entrySet()) {
+			e.setValue(e.getValue() / total);
+		}
+		return areas;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param zipcodes map with postal code as key and shape as value
+	 */
+	public AreaApportioner(Map<String, MultiPolygon> zipcodes) {
+		for (Map.Entry<String, MultiPolygon> e: zipcodes.entrySet()) {
+			PreparedGeometry prepared = PreparedGeometryFactory.prepare(e.getValue());
+			index.insert(e.getValue().getEnvelopeInternal(), 
+						new AbstractMap.SimpleImmutableEntry<>(e.getKey(), prepared));
+		}
+		index.build();
+	}
+}
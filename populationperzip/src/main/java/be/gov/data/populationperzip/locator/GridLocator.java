@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+
+/**
+ * Find the postal code of a point using a raster grid of square cells covering all postal districts.
+ * 
+ * Cells completely inside a postal district contain the postal code, so most lookups only need an array access.
+ * Cells on the boundary of postal districts contain a list of candidates, which are checked using
+ * a "prepared" (indexed) version of each candidate postal district shape.
+ * 
+ * The grid can be written to a compact binary file, and read again without the postal districts shapefile.
+ * 
+ * @author Bart Hanssens
+ */
+public class GridLocator extends AbstractLocator {
+	private final static Logger LOG = Logger.getLogger(GridLocator.class.getName());
+
+	public final static double DEFAULT_CELL_SIZE = 100;
+
+	private final static int MAGIC = 0x50505a47; // PPZG
+	private final static int VERSION = 1;
+	// cells without postal district
+	private final static int EMPTY = -1;
+	// size (in cells) of the blocks the grid is split in when classifying cells
+	private final static int BLOCK_SIZE = 256;
+
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int cols;
+	private final int rows;
+
+	private final String[] codes;
+	// index of postal code, EMPTY, or -2 - index of candidate list for boundary cells
+	private final int[] cells;
+	private final int[][] candidates;
+	private final IndexedPointInAreaLocator[] shapes;
+	// only used when creating the grid
+	private final MultiPolygon[] polygons;
+
+	@Override
+	public String locate(Point point) {
+		return locate(point.getX(), point.getY());
+	}
+
+	/**
+	 * Find the postal code of a coordinate, without creating a point
+	 * 
+	 * @param x X-coordinate, in the same coordinate reference system as the postal districts
+	 * @param y Y-coordinate
+	 * @return zipcode or null when not found
+	 */
+	public String locate(double x, double y) {
+		double col = Math.floor((x - minX) / cellSize);
+		double row = Math.floor((y - minY) / cellSize);
+		if (col < 0 || row < 0 || col >= cols || row >= rows) {
+			count(0);
+			return null;
+		}
+
+		int cell = cells[(int) row * cols + (int) col];
+		if (cell >= 0) {
+			count(0);
+			return codes[cell];
+		}
+		if (cell == EMPTY) {
+			count(0);
+			return null;
+		}
+
+		int[] found = candidates[-2 - cell];
+		count(found.length);
+
+		Coordinate coord = new Coordinate(x, y);
+		for (int i: found) {
+			// within: inside the area, not on the boundary
+			if (shapes[i].locate(coord) == Location.INTERIOR) {
+				return codes[i];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected int size() {
+		return codes.length;
+	}
+
+	/**
+	 * Get the number of boundary cells
+	 * 
+	 * @return number of cells
+	 */
+	public long boundaryCells() {
+		return Arrays.stream(cells).filter(c -> c < EMPTY).count();
+	}
+
+	/**
+	 * Set all cells of a block to a postal code
+	 * 
+	 * @param x0 first column
+	 * @param y0 first row
+	 * @param size size of the block
+	 * @param value index of the postal code
+	 */
+	private void fill(int x0, int y0, int size, int value) {
+		int x1 = Math.min(x0 + size, cols);
+		int y1 = Math.min(y0 + size, rows);
+		for (int y = y0; y < y1; y++) {
+			Arrays.fill(cells, y * cols + x0, y * cols + x1, value);
+		}
+	}
+
+	/**
+	 * Classify the cells of a block, by recursively splitting the block into four smaller blocks,
+	 * until the block is completely covered by one postal district or a single (boundary) cell remains.
+	 * 
+	 * @param factory geometry factory
+	 * @param prepared prepared shapes of the postal districts
+	 * @param lists boundary candidate lists, to avoid storing the same list more than once
+	 * @param x0 first column
+	 * @param y0 first row
+	 * @param size size of the block
+	 * @param parent candidates intersecting the parent block
+	 */
+	private void classify(GeometryFactory factory, PreparedGeometry[] prepared, Map<List<Integer>, Integer> lists,
+							int x0, int y0, int size, List<Integer> parent) {
+		if (x0 >= cols || y0 >= rows) {
+			return;
+		}
+		Envelope env = new Envelope(minX + x0 * cellSize, minX + (x0 + size) * cellSize, 
+									minY + y0 * cellSize, minY + (y0 + size) * cellSize);
+		Geometry block = factory.toGeometry(env);
+
+		List<Integer> found = new ArrayList<>();
+		for (int i: parent) {
+			if (!polygons[i].getEnvelopeInternal().intersects(env)) {
+				continue;
+			}
+			if (prepared[i].covers(block)) {
+				fill(x0, y0, size, i);
+				return;
+			}
+			if (prepared[i].intersects(block)) {
+				found.add(i);
+			}
+		}
+		if (found.isEmpty()) {
+			return;
+		}
+		if (size == 1) {
+			Integer list = lists.computeIfAbsent(found, k -> lists.size());
+			cells[y0 * cols + x0] = -2 - list;
+			return;
+		}
+
+		int half = size / 2;
+		classify(factory, prepared, lists, x0, y0, half, found);
+		classify(factory, prepared, lists, x0 + half, y0, half, found);
+		classify(factory, prepared, lists, x0, y0 + half, half, found);
+		classify(factory, prepared, lists, x0 + half, y0 + half, half, found);
+	}
+
+	/**
+	 * Create the prepared shapes used for the boundary cells
+	 * 
+	 * @param polygons shapes of the postal districts, null when not used in boundary cells
+	 * @return prepared shapes
+	 */
+	private static IndexedPointInAreaLocator[] prepare(MultiPolygon[] polygons) {
+		IndexedPointInAreaLocator[] shapes = new IndexedPointInAreaLocator[polygons.length];
+		for (int i = 0; i < polygons.length; i++) {
+			if (polygons[i] != null) {
+				shapes[i] = new IndexedPointInAreaLocator(polygons[i]);
+				// the point index is built lazily, so force it now instead of in (one of) the worker threads
+				shapes[i].locate(polygons[i].getEnvelopeInternal().centre());
+			}
+		}
+		return shapes;
+	}
+
+	/**
+	 * Write the grid to a binary file.
+	 * Cells are run-length encoded, and only the shapes needed for boundary cells are stored (as WKB).
+	 * 
+	 * @param file output file
+	 * @throws IOException 
+	 */
+	public void write(Path file) throws IOException {
+		LOG.log(Level.INFO, "Writing grid to {0}", file);
+
+		boolean[] needed = new boolean[codes.length];
+		for (int[] list: candidates) {
+			for (int i: list) {
+				needed[i] = true;
+			}
+		}
+
+		Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "grid", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(minX);
+			out.writeDouble(minY);
+			out.writeDouble(cellSize);
+			out.writeInt(cols);
+			out.writeInt(rows);
+
+			WKBWriter wkb = new WKBWriter();
+			out.writeInt(codes.length);
+			for (int i = 0; i < codes.length; i++) {
+				out.writeUTF(codes[i]);
+				byte[] bytes = (needed[i] && shapes[i] != null) ? wkb.write(polygons[i]) : new byte[0];
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeInt(candidates.length);
+			for (int[] list: candidates) {
+				out.writeInt(list.length);
+				for (int i: list) {
+					out.writeInt(i);
+				}
+			}
+
+			// run-length encoding: value and number of cells
+			for (int i = 0; i < cells.length; ) {
+				int start = i;
+				while (i < cells.length && cells[i] == cells[start]) {
+					i++;
+				}
+				out.writeInt(cells[start]);
+				out.writeInt(i - start);
+			}
+		} catch (IOException ioe) {
+			Files.deleteIfExists(tmp);
+			throw ioe;
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a grid from a binary file
+	 * 
+	 * @param file binary file
+	 * @return locator
+	 * @throws IOException when the file could not be read or is not a grid file
+	 */
+	public static GridLocator read(Path file) throws IOException {
+		LOG.log(Level.INFO, "Reading grid from {0}", file);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a (supported) grid file " + file);
+			}
+			double minX = in.readDouble();
+			double minY = in.readDouble();
+			double cellSize = in.readDouble();
+			int cols = in.readInt();
+			int rows = in.readInt();
+
+			WKBReader wkb = new WKBReader();
+			String[] codes = new String[in.readInt()];
+			MultiPolygon[] polygons = new MultiPolygon[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				codes[i] = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				if (bytes.length > 0) {
+					try {
+						polygons[i] = (MultiPolygon) wkb.read(bytes);
+					} catch (ParseException|ClassCastException ex) {
+						throw new IOException("Invalid shape for " + codes[i], ex);
+					}
+				}
+			}
+
+			int[][] candidates = new int[in.readInt()][];
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] = new int[in.readInt()];
+				for (int j = 0; j < candidates[i].length; j++) {
+					candidates[i][j] = in.readInt();
+				}
+			}
+
+			int[] cells = new int[Math.multiplyExact(cols, rows)];
+			for (int i = 0; i < cells.length; ) {
+				int value = in.readInt();
+				int len = in.readInt();
+				Arrays.fill(cells, i, i + len, value);
+				i += len;
+			}
+			return new GridLocator(minX, minY, cellSize, cols, rows, codes, cells, candidates, polygons);
+		}
+	}
+
+	/**
+	 * Constructor, used when reading a grid file
+	 * 
+	 * @param minX minimum X-coordinate
+	 * @param minY minimum Y-coordinate
+	 * @param cellSize size of a cell, in units of the coordinate reference system
+	 * @param cols number of columns
+	 * @param rows number of rows
+	 * @param codes postal codes
+	 * @param cells index of postal code, or candidate list
+	 * @param candidates candidate lists
+	 * @param polygons shapes used in candidate lists
+	 */
+	private GridLocator(double minX, double minY, double cellSize, int cols, int rows, String[] codes, int[] cells, 
+						int[][] candidates, MultiPolygon[] polygons) {
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.cols = cols;
+		this.rows = rows;
+		this.codes = codes;
+		this.cells = cells;
+		this.candidates = candidates;
+		this.polygons = polygons;
+		this.shapes = prepare(polygons);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param zipcodes map with postal code as key and shape as value
+	 * @param cellSize size of a cell, in units of the coordinate reference system (e.g. meters)
+	 */
+	public GridLocator(Map<String, MultiPolygon> zipcodes, double cellSize) {
+		this.cellSize = cellSize;
+		this.codes = zipcodes.keySet().toArray(new String[zipcodes.size()]);
+		Arrays.sort(codes);
+
+		this.polygons = new MultiPolygon[codes.length];
+		PreparedGeometry[] prepared = new PreparedGeometry[codes.length];
+		Envelope extent = new Envelope();
+
+		for (int i = 0; i < codes.length; i++) {
+			polygons[i] = zipcodes.get(codes[i]);
+			prepared[i] = PreparedGeometryFactory.prepare(polygons[i]);
+			extent.expandToInclude(polygons[i].getEnvelopeInternal());
+		}
+
+		this.minX = extent.getMinX();
+		this.minY = extent.getMinY();
+		this.cols = Math.max(1, (int) Math.ceil(extent.getWidth() / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(extent.getHeight() / cellSize));
+		this.cells = new int[Math.multiplyExact(cols, rows)];
+		Arrays.fill(cells, EMPTY);
+
+		LOG.log(Level.INFO, "Creating grid of {0} x {1} cells", new Object[] { cols, rows });
+
+		GeometryFactory factory = new GeometryFactory();
+		Map<List<Integer>, Integer> lists = new HashMap<>();
+		List<Integer> all = new ArrayList<>(codes.length);
+		for (int i = 0; i < codes.length; i++) {
+			all.add(i);
+		}
+		for (int y = 0; y < rows; y += BLOCK_SIZE) {
+			for (int x = 0; x < cols; x += BLOCK_SIZE) {
+				classify(factory, prepared, lists, x, y, BLOCK_SIZE, all);
+			}
+		}
+
+		int[][] found = new int[lists.size()][];
+		lists.forEach((list, i) -> found[i] = list.stream().mapToInt(Integer::intValue).toArray());
+		this.candidates = found;
+		this.shapes = prepare(polygons);
+
+		LOG.log(Level.INFO, "{0} boundary cells, {1} candidate lists", 
+							new Object[] { boundaryCells(), candidates.length });
+	}
+}
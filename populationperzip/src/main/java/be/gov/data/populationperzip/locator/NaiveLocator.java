@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.util.Map;
+
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Find the postal code of a point by checking all the postal districts, one by one.
+ * 
+ * @author Bart Hanssens
+ */
+public class NaiveLocator extends AbstractLocator {
+	private final Map<String, MultiPolygon> zipcodes;
+
+	@Override
+	public String locate(Point point) {
+		int tested = 0;
+		String found = null;
+
+		for (Map.Entry<String, MultiPolygon> e: zipcodes.entrySet()) {
+			tested++;
+			if (point.within(e.getValue())) {
+				found = e.getKey();
+				break;
+			}
+		}
+		count(tested);
+		return found;
+	}
+
+	@Override
+	protected int size() {
+		return zipcodes.size();
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param zipcodes map with postal code as key and shape as value
+	 */
+	public NaiveLocator(Map<String, MultiPolygon> zipcodes) {
+		this.zipcodes = zipcodes;
+	}
+}
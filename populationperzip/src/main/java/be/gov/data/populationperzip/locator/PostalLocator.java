@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.util.Map;
+
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Find the postal code for a given point
+ * 
+ * @author Bart Hanssens
+ */
+public interface PostalLocator {
+	/**
+	 * Type of locator / point-in-polygon engine
+	 */
+	public enum Type { NAIVE, INDEXED, PREPARED, GRID }
+
+	/**
+	 * Find zipcode for a point
+	 * 
+	 * @param point point
+	 * @return zipcode or null when not found
+	 */
+	public String locate(Point point);
+
+	/**
+	 * Log statistics, like the number of lookups and polygons tested so far
+	 */
+	public default void logStats() {
+	}
+
+	/**
+	 * Create a locator for a set of postal districts
+	 * 
+	 * @param type locator type
+	 * @param zipcodes map with postal code as key and shape as value
+	 * @return locator
+	 */
+	public static PostalLocator create(Type type, Map<String, MultiPolygon> zipcodes) {
+		switch(type) {
+			case NAIVE:
+				return new NaiveLocator(zipcodes);
+			case INDEXED:
+				return new IndexedLocator(zipcodes);
+			case PREPARED:
+				return new PreparedLocator(zipcodes);
+			case GRID:
+				return new GridLocator(zipcodes, GridLocator.DEFAULT_CELL_SIZE);
+			default:
+				throw new IllegalArgumentException("Unknown locator type " + type);
+		}
+	}
+}
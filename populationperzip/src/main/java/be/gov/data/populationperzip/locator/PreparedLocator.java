@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Find the postal code of a point, using a spatial index on the bounding boxes of the postal districts
+ * and a "prepared" (indexed) version of each postal district shape.
+ * The shapes are prepared only once, instead of rebuilding the topology for each point.
+ * 
+ * @author Bart Hanssens
+ */
+public class PreparedLocator extends AbstractLocator {
+	private final static Logger LOG = Logger.getLogger(PreparedLocator.class.getName());
+
+	private final STRtree index = new STRtree();
+
+	@Override
+	public String locate(Point point) {
+		List<Map.Entry<String, IndexedPointInAreaLocator>> found = index.query(point.getEnvelopeInternal());
+
+		count(found.size());
+		LOG.log(Level.FINE, "{0} candidates for {1}", new Object[] { found.size(), point });
+
+		for (Map.Entry<String, IndexedPointInAreaLocator> e: found) {
+			// within: inside the area, not on the boundary
+			if (e.getValue().locate(point.getCoordinate()) == Location.INTERIOR) {
+				return e.getKey();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected int size() {
+		return index.size();
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param zipcodes map with postal code as key and shape as value
+	 */
+	public PreparedLocator(Map<String, MultiPolygon> zipcodes) {
+		for (Map.Entry<String, MultiPolygon> e: zipcodes.entrySet()) {
+			Envelope env = e.getValue().getEnvelopeInternal();
+			IndexedPointInAreaLocator prepared = new IndexedPointInAreaLocator(e.getValue());
+			// the point index is built lazily, so force it now instead of in (one of) the worker threads
+			prepared.locate(env.centre());
+			index.insert(env, new AbstractMap.SimpleImmutableEntry<>(e.getKey(), prepared));
+		}
+		index.build();
+	}
+}
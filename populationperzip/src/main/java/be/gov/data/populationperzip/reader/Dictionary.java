@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionary encoding of (repeating) values, e.g. sector codes or age groups.
+ * Each distinct value gets a number, starting at 0.
+ * 
+ * @author Bart Hanssens
+ */
+public class Dictionary {
+	private final PopulationMap index = new PopulationMap(64);
+	private final List<String> values = new ArrayList<>();
+
+	/**
+	 * Get the code of a value, adding it to the dictionary when not present
+	 * 
+	 * @param value value
+	 * @return code
+	 */
+	public int encode(String value) {
+		int code = index.get(value, -1);
+		if (code < 0) {
+			code = values.size();
+			values.add(value);
+			index.add(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Get the code of a value read from a buffer (ISO-8859-1), adding it to the dictionary when not present
+	 * 
+	 * @param buf buffer
+	 * @param off start of the value in the buffer
+	 * @param len length of the value
+	 * @return code
+	 */
+	public int encode(ByteBuffer buf, int off, int len) {
+		int code = index.get(buf, off, len, -1);
+		if (code < 0) {
+			byte[] b = new byte[len];
+			for (int i = 0; i < len; i++) {
+				b[i] = buf.get(off + i);
+			}
+			code = encode(new String(b, StandardCharsets.ISO_8859_1));
+		}
+		return code;
+	}
+
+	/**
+	 * Get the code of a value
+	 * 
+	 * @param value value
+	 * @return code or -1 when not present
+	 */
+	public int code(String value) {
+		return index.get(value, -1);
+	}
+
+	/**
+	 * Get the value of a code
+	 * 
+	 * @param code code
+	 * @return value
+	 */
+	public String decode(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * Number of distinct values
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return values.size();
+	}
+}
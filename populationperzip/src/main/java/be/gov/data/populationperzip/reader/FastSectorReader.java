@@ -0,0 +1,709 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger
+	;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Read statistic sector GeoJSON file using a streaming parser, without using the GeoTools feature model.
+ * The JTS geometry is created directly from the coordinates, only the NIS-code property is kept.
+ * 
+ * Note that this class is not thread-safe.
+ * 
+ * @author Bart Hanssens
+ */
+public class FastSectorReader {
+	private final static Logger LOG = Logger.getLogger(FastSectorReader.class.getName());
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+	// powers of ten that can be represented exactly as a double
+	private final static double[] POW10 = { 
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 
+	};
+
+	private final GeometryFactory factory = new GeometryFactory();
+	private final char[] buf = new char[BUFFER_SIZE];
+	private final char[] num = new char[64];
+	private final StringBuilder str = new StringBuilder(64);
+
+	private Reader in;
+	private long offset;
+	private int pos;
+	private int len;
+
+	/**
+	 * Peek at the next character, without consuming it
+	 * 
+	 * @return character or -1 at end of file
+	 * @throws IOException 
+	 */
+	private int peekChar() throws IOException {
+		if (pos == len) {
+			offset += len;
+			len = in.read(buf, 0, buf.length);
+			pos = 0;
+			if (len <= 0) {
+				len = 0;
+				return -1;
+			}
+		}
+		return buf[pos];
+	}
+
+	/**
+	 * Read the next character
+	 * 
+	 * @return character
+	 * @throws IOException when end of file is reached
+	 */
+	private char readChar() throws IOException {
+		if (peekChar() < 0) {
+			throw new IOException("Unexpected end of file");
+		}
+		return buf[pos++];
+	}
+
+	/**
+	 * Skip whitespace and peek at the next character, without consuming it
+	 * 
+	 * @return character or -1 at end of file
+	 * @throws IOException 
+	 */
+	private int peek() throws IOException {
+		int c = peekChar();
+		while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+			pos++;
+			c = peekChar();
+		}
+		return c;
+	}
+
+	/**
+	 * Create an exception for an unexpected character
+	 * 
+	 * @param c character
+	 * @return exception
+	 */
+	private IOException unexpected(int c) {
+		return (c < 0) ? new IOException("Unexpected end of file")
+						: new IOException("Unexpected character '" + (char) c + "' at offset " + (offset + pos));
+	}
+
+	/**
+	 * Skip whitespace and consume the expected character
+	 * 
+	 * @param expected character
+	 * @throws IOException when another character is found
+	 */
+	private void expect(char expected) throws IOException {
+		int c = peek();
+		if (c != expected) {
+			throw unexpected(c);
+		}
+		pos++;
+	}
+
+	/**
+	 * Read a string, including the quotes
+	 * 
+	 * @return string value
+	 * @throws IOException 
+	 */
+	private String readString() throws IOException {
+		expect('"');
+		str.setLength(0);
+
+		for (char c = readChar(); c != '"'; c = readChar()) {
+			if (c == '\\') {
+				c = readChar();
+				switch (c) {
+					case 'b': c = '\b'; break;
+					case 'f': c = '\f'; break;
+					case 'n': c = '\n'; break;
+					case 'r': c = '\r'; break;
+					case 't': c = '\t'; break;
+					case 'u': 
+						char[] hex = { readChar(), readChar(), readChar(), readChar() };
+						try {
+							c = (char) Integer.parseInt(new String(hex), 16);
+						} catch (NumberFormatException nfe) {
+							throw new IOException("Invalid escape at offset " + (offset + pos));
+						}
+						break;
+					default: // quote, slash and backslash
+						break;
+				}
+			}
+			str.append(c);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Read a number, true/false/null literal or a string without escapes, as a string
+	 * 
+	 * @return string value
+	 * @throws IOException 
+	 */
+	private String readScalar() throws IOException {
+		if (peek() == '"') {
+			return readString();
+		}
+		str.setLength(0);
+		for (int c = peekChar(); c >= 0 && c != ',' && c != '}' && c != ']' && c > ' '; c = peekChar()) {
+			str.append((char) c);
+			pos++;
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Read a number.
+	 * Most coordinates have less than 18 significant digits, these are calculated directly.
+	 * Other numbers are parsed using the JDK.
+	 * 
+	 * @return number as double
+	 * @throws IOException 
+	 */
+	private double readNumber() throws IOException {
+		peek();
+
+		boolean neg = false;
+		boolean exact = true;
+		long mantissa = 0;
+		int digits = 0;
+		int exp = 0;
+		int n = 0;
+
+		int c = peekChar();
+		if (c == '-') {
+			neg = true;
+			num[n++] = '-';
+			pos++;
+			c = peekChar();
+		}
+		// integer part
+		for (; c >= '0' && c <= '9' && n < num.length; c = peekChar()) {
+			num[n++] = (char) c;
+			pos++;
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa > 0) {
+					digits++;
+				}
+			} else {
+				exp++;
+				exact = false;
+			}
+		}
+		// fraction
+		if (c == '.') {
+			num[n++] = '.';
+			pos++;
+			for (c = peekChar(); c >= '0' && c <= '9' && n < num.length; c = peekChar()) {
+				num[n++] = (char) c;
+				pos++;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa > 0) {
+						digits++;
+					}
+					exp--;
+				} else {
+					exact = false;
+				}
+			}
+		}
+		// exponent
+		if (c == 'e' || c == 'E') {
+			num[n++] = 'e';
+			pos++;
+			exact = false;
+			for (c = peekChar(); (c >= '0' && c <= '9' || c == '-' || c == '+') && n < num.length; c = peekChar()) {
+				num[n++] = (char) c;
+				pos++;
+			}
+		}
+		if (n == 0 || (n == 1 && neg)) {
+			throw unexpected(c);
+		}
+		if (n == num.length) {
+			throw new IOException("Number too long at offset " + (offset + pos));
+		}
+
+		if (exact && exp >= -22 && mantissa < (1L << 53)) {
+			double d = mantissa / POW10[-exp];
+			return neg ? -d : d;
+		}
+		try {
+			return Double.parseDouble(new String(num, 0, n));
+		} catch (NumberFormatException nfe) {
+			throw new IOException("Invalid number at offset " + (offset + pos));
+		}
+	}
+
+	/**
+	 * Skip a value (object, array, string or literal)
+	 * 
+	 * @throws IOException 
+	 */
+	private void skipValue() throws IOException {
+		int c = peek();
+		if (c == '{') {
+			for (String key = firstKey(); key != null; key = nextKey()) {
+				skipValue();
+			}
+		} else if (c == '[') {
+			if (firstElement()) {
+				do {
+					skipValue();
+				} while (nextElement());
+			}
+		} else if (c == '"') {
+			pos++;
+			for (char ch = readChar(); ch != '"'; ch = readChar()) {
+				if (ch == '\\') {
+					readChar();
+				}
+			}
+		} else {
+			for (c = peekChar(); c >= 0 && c != ',' && c != '}' && c != ']' && c > ' '; c = peekChar()) {
+				pos++;
+			}
+		}
+	}
+
+	/**
+	 * Start reading an object and read the first key
+	 * 
+	 * @return key or null when the object is empty
+	 * @throws IOException 
+	 */
+	private String firstKey() throws IOException {
+		expect('{');
+		if (peek() == '}') {
+			pos++;
+			return null;
+		}
+		String key = readString();
+		expect(':');
+		return key;
+	}
+
+	/**
+	 * Read the next key of an object
+	 * 
+	 * @return key or null at the end of the object
+	 * @throws IOException 
+	 */
+	private String nextKey() throws IOException {
+		int c = peek();
+		if (c == '}') {
+			pos++;
+			return null;
+		}
+		if (c != ',') {
+			throw unexpected(c);
+		}
+		pos++;
+		String key = readString();
+		expect(':');
+		return key;
+	}
+
+	/**
+	 * Start reading an array
+	 * 
+	 * @return false when the array is empty
+	 * @throws IOException 
+	 */
+	private boolean firstElement() throws IOException {
+		expect('[');
+		if (peek() == ']') {
+			pos++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Move to the next element of an array
+	 * 
+	 * @return false at the end of the array
+	 * @throws IOException 
+	 */
+	private boolean nextElement() throws IOException {
+		int c = peek();
+		if (c == ']') {
+			pos++;
+			return false;
+		}
+		if (c != ',') {
+			throw unexpected(c);
+		}
+		pos++;
+		return true;
+	}
+
+	/**
+	 * Check if the next value is null, and consume it
+	 * 
+	 * @return true if null
+	 * @throws IOException 
+	 */
+	private boolean isNull() throws IOException {
+		if (peek() == 'n') {
+			skipValue();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read the (nested) coordinates array of a geometry.
+	 * A position is returned as a coordinate, an array of positions as an array of coordinates,
+	 * other (nested) arrays as a list.
+	 * 
+	 * @return coordinate, array of coordinates or list
+	 * @throws IOException 
+	 */
+	private Object readCoordinates() throws IOException {
+		if (!firstElement()) {
+			return new ArrayList<>(0);
+		}
+		int c = peek();
+		if (c == '-' || (c >= '0' && c <= '9')) {
+			double x = readNumber();
+			expect(',');
+			double y = readNumber();
+			// ignore altitude
+			while (nextElement()) {
+				skipValue();
+			}
+			return new Coordinate(x, y);
+		}
+
+		List<Object> list = new ArrayList<>();
+		do {
+			list.add(readCoordinates());
+		} while (nextElement());
+
+		if (list.get(0) instanceof Coordinate) {
+			return list.toArray(new Coordinate[list.size()]);
+		}
+		return list;
+	}
+
+	/**
+	 * Cast to array of coordinates
+	 * 
+	 * @param obj coordinates as read from file
+	 * @return array of coordinates
+	 * @throws IOException when the nesting is not correct
+	 */
+	private static Coordinate[] toCoordinates(Object obj) throws IOException {
+		if (obj instanceof Coordinate[]) {
+			return (Coordinate[]) obj;
+		}
+		if (obj instanceof List && ((List<?>) obj).isEmpty()) {
+			return new Coordinate[0];
+		}
+		throw new IOException("Expected array of positions");
+	}
+
+	/**
+	 * Cast to list of (nested) coordinates
+	 * 
+	 * @param obj coordinates as read from file
+	 * @return list
+	 * @throws IOException when the nesting is not correct
+	 */
+	private static List<?> toList(Object obj) throws IOException {
+		if (obj instanceof List) {
+			return (List<?>) obj;
+		}
+		throw new IOException("Expected array of arrays");
+	}
+
+	/**
+	 * Create a polygon from a list of rings, the first one being the outer ring
+	 * 
+	 * @param obj list of rings
+	 * @return polygon
+	 * @throws IOException 
+	 */
+	private Polygon toPolygon(Object obj) throws IOException {
+		List<?> rings = toList(obj);
+		if (rings.isEmpty()) {
+			return factory.createPolygon();
+		}
+		LinearRing shell = factory.createLinearRing(toCoordinates(rings.get(0)));
+		LinearRing[] holes = new LinearRing[rings.size() - 1];
+		for (int i = 0; i < holes.length; i++) {
+			holes[i] = factory.createLinearRing(toCoordinates(rings.get(i + 1)));
+		}
+		return factory.createPolygon(shell, holes);
+	}
+
+	/**
+	 * Create a geometry
+	 * 
+	 * @param type GeoJSON geometry type
+	 * @param coords coordinates as read from file
+	 * @param geometries member geometries of a collection
+	 * @return geometry
+	 * @throws IOException when type is unknown or coordinates are missing
+	 */
+	private Geometry toGeometry(String type, Object coords, List<Geometry> geometries) throws IOException {
+		if (type == null) {
+			throw new IOException("Geometry without type at offset " + (offset + pos));
+		}
+		if (type.equals("GeometryCollection")) {
+			return factory.createGeometryCollection(geometries == null ? new Geometry[0] 
+											: geometries.toArray(new Geometry[geometries.size()]));
+		}
+		if (coords == null) {
+			throw new IOException("Geometry without coordinates at offset " + (offset + pos));
+		}
+
+		switch (type) {
+			case "Point":
+				if (!(coords instanceof Coordinate)) {
+					return factory.createPoint();
+				}
+				return factory.createPoint((Coordinate) coords);
+			case "MultiPoint":
+				return factory.createMultiPointFromCoords(toCoordinates(coords));
+			case "LineString":
+				return factory.createLineString(toCoordinates(coords));
+			case "MultiLineString":
+				List<?> lines = toList(coords);
+				LineString[] ls = new LineString[lines.size()];
+				for (int i = 0; i < ls.length; i++) {
+					ls[i] = factory.createLineString(toCoordinates(lines.get(i)));
+				}
+				return factory.createMultiLineString(ls);
+			case "Polygon":
+				return toPolygon(coords);
+			case "MultiPolygon":
+				List<?> polys = toList(coords);
+				Polygon[] ps = new Polygon[polys.size()];
+				for (int i = 0; i < ps.length; i++) {
+					ps[i] = toPolygon(polys.get(i));
+				}
+				return factory.createMultiPolygon(ps);
+			default:
+				throw new IOException("Unsupported geometry type " + type);
+		}
+	}
+
+	/**
+	 * Read a geometry object
+	 * 
+	 * @return geometry or null
+	 * @throws IOException 
+	 */
+	private Geometry readGeometry() throws IOException {
+		if (isNull()) {
+			return null;
+		}
+		String type = null;
+		Object coords = null;
+		List<Geometry> geometries = null;
+
+		// the type is not necessarily the first member, so only create the geometry at the end
+		for (String key = firstKey(); key != null; key = nextKey()) {
+			switch (key) {
+				case "type": 
+					type = readString();
+					break;
+				case "coordinates":
+					coords = readCoordinates();
+					break;
+				case "geometries":
+					geometries = new ArrayList<>();
+					if (firstElement()) {
+						do {
+							geometries.add(readGeometry());
+						} while (nextElement());
+					}
+					break;
+				default:
+					skipValue();
+			}
+		}
+		return toGeometry(type, coords, geometries);
+	}
+
+	/**
+	 * Read the properties of a feature, only keeping the NIS-code
+	 * 
+	 * @return NIS-code or empty string
+	 * @throws IOException 
+	 */
+	private String readProperties() throws IOException {
+		String nis = "";
+		if (isNull()) {
+			return nis;
+		}
+		for (String key = firstKey(); key != null; key = nextKey()) {
+			if (key.equals(SectorReader.NIS)) {
+				nis = readScalar();
+			} else {
+				skipValue();
+			}
+		}
+		return nis;
+	}
+
+	/**
+	 * Read a feature and pass the NIS-code and geometry to the consumer
+	 * 
+	 * @param consumer
+	 * @throws IOException 
+	 */
+	private void readFeature(BiConsumer<String, Geometry> consumer) throws IOException {
+		String nis = "";
+		Geometry geom = null;
+
+		for (String key = firstKey(); key != null; key = nextKey()) {
+			switch (key) {
+				case "properties":
+					nis = readProperties();
+					break;
+				case "geometry":
+					geom = readGeometry();
+					break;
+				default:
+					skipValue();
+			}
+		}
+		if (geom == null) {
+			LOG.log(Level.WARNING, "No geometry for sector {0}", nis);
+			return;
+		}
+		consumer.accept(nis, geom);
+	}
+
+	/**
+	 * Stream the sectors in a GeoJSON feature collection file.
+	 * Features are not kept in memory.
+	 * 
+	 * @param file GeoJSON file
+	 * @param consumer function called for each NIS-code and geometry
+	 * @throws IOException 
+	 */
+	public void forEachSector(Path file, BiConsumer<String, Geometry> consumer) throws IOException {
+		LOG.log(Level.INFO, "Streaming features from {0}", file);
+
+		int count = 0;
+		try (Reader r = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+			in = r;
+			offset = 0;
+			pos = 0;
+			len = 0;
+
+			// skip byte order mark, if any
+			if (peekChar() == '\uFEFF') {
+				pos++;
+			}
+			for (String key = firstKey(); key != null; key = nextKey()) {
+				if (!key.equals("features") || isNull()) {
+					skipValue();
+					continue;
+				}
+				if (firstElement()) {
+					do {
+						readFeature(consumer);
+						count++;
+					} while (nextElement());
+				}
+			}
+		} finally {
+			in = null;
+		}
+		LOG.log(Level.INFO, "Read {0} features", count);
+	}
+
+	/**
+	 * Read sectors and convert each shape
+	 * 
+	 * @param <T> type of the converted shape
+	 * @param file GeoJSON file
+	 * @param fun conversion function
+	 * @return map with NIS-code as key and converted shape as value
+	 * @throws IOException 
+	 */
+	private <T> Map<String, T> read(Path file, Function<Geometry, T> fun) throws IOException {
+		HashMap<String, T>  map = new HashMap<>();
+		forEachSector(file, (nis, geom) -> map.put(nis, fun.apply(geom)));
+		return map;
+	}
+
+	/**
+	 * Read the "interior point" of each sector
+	 * 
+	 * @param file GeoJSON file
+	 * @return map with NIS-code as key and interior point as value
+	 * @throws IOException 
+	 */
+	public Map<String,Point> read(Path file) throws IOException {
+		return read(file, Geometry::getInteriorPoint);
+	}
+
+	/**
+	 * Read the full shape of each sector
+	 * 
+	 * @param file GeoJSON file
+	 * @return map with NIS-code as key and shape as value
+	 * @throws IOException 
+	 */
+	public Map<String,Geometry> readGeometries(Path file) throws IOException {
+		return read(file, Function.identity());
+	}
+}
@@ -31,16 +31,18 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger
 	;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
-import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.util.URLs;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 /**
  * Helper class for reading GeoJSON or ESRI Shapefile
@@ -51,27 +53,71 @@ public abstract class GeoReader {
 	private final static Logger LOG = Logger.getLogger(GeoReader.class.getName());
 	
 	/**
-	 * Get a collection of "features", e.g. shapes
+	 * Open a file as data store
 	 * 
-	 * @param file shapefile
-	 * @return collection of features found in shapefile
-	 * @throws IOException 
+	 * @param file shapefile or GeoJSON file
+	 * @return data store, to be disposed by the caller
+	 * @throws IOException when there is no reader for this file
 	 */
-	protected SimpleFeatureCollection getFeatures(File file) throws IOException {
+	private DataStore openStore(File file) throws IOException {
 		// parameters  for geotools
-		LOG.log(Level.INFO, "Getting features from {0}", file);
-
-		// name has to be without extension
-		String name = file.getName().replaceAll("\\.(geojson|sqlite|gpkg|shp)", "");
-
 		Map params = new HashMap<>();
         params.put("url", URLs.fileToUrl(file));
 		DataStore store = DataStoreFinder.getDataStore(params);
-		SimpleFeatureSource src = store.getFeatureSource(name);
-		SimpleFeatureCollection coll = src.getFeatures();
-		store.dispose();
+		if (store == null) {
+			throw new IOException("No reader found for " + file);
+		}
+		return store;
+	}
 
-		return coll;
+	/**
+	 * Get the name of the feature type, which is the file name without extension
+	 * 
+	 * @param file shapefile or GeoJSON file
+	 * @return name
+	 */
+	private String getTypeName(File file) {
+		return file.getName().replaceAll("\\.(geojson|sqlite|gpkg|shp)", "");
+	}
+
+	/**
+	 * Iterate over the "features", e.g. shapes, in a file.
+	 * The file is only kept open during the iteration, and features are not kept in memory.
+	 * 
+	 * @param file shapefile or GeoJSON file
+	 * @param consumer function called for each feature
+	 * @throws IOException 
+	 */
+	protected void forEachFeature(File file, Consumer<SimpleFeature> consumer) throws IOException {
+		LOG.log(Level.INFO, "Getting features from {0}", file);
+
+		DataStore store = openStore(file);
+		try {
+			SimpleFeatureSource src = store.getFeatureSource(getTypeName(file));
+			try (SimpleFeatureIterator features = src.getFeatures().features()) {
+				while (features.hasNext()) {
+					consumer.accept(features.next());
+				}
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+
+	/**
+	 * Get the coordinate reference system of the features in a file
+	 * 
+	 * @param file shapefile or GeoJSON file
+	 * @return coordinate reference system or null when not known
+	 * @throws IOException 
+	 */
+	public CoordinateReferenceSystem getCRS(File file) throws IOException {
+		DataStore store = openStore(file);
+		try {
+			return store.getSchema(getTypeName(file)).getCoordinateReferenceSystem();
+		} finally {
+			store.dispose();
+		}
 	}
 
 	/**
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Map with NIS-code as key and population as (primitive) value, using open addressing.
+ * Keys can be looked up directly from the bytes in a buffer, so no String is created for keys already in the map.
+ * 
+ * @author Bart Hanssens
+ */
+public class PopulationMap {
+	private String[] keys;
+	private int[] hashes;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+
+	/**
+	 * Spread the bits of the hash code
+	 * 
+	 * @param h hash code
+	 * @return spread hash
+	 */
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Find the slot of a key, or an empty slot if the key is not in the map
+	 * 
+	 * @param key key
+	 * @param hash hash code of the key
+	 * @return slot number
+	 */
+	private int slot(String key, int hash) {
+		int i = spread(hash) & mask;
+		while (keys[i] != null && (hashes[i] != hash || !keys[i].equals(key))) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Find the slot of a key, or an empty slot if the key is not in the map
+	 * 
+	 * @param buf buffer
+	 * @param off start of key in buffer
+	 * @param len length of the key
+	 * @param hash hash code of the key
+	 * @return slot number
+	 */
+	private int slot(ByteBuffer buf, int off, int len, int hash) {
+		int i = spread(hash) & mask;
+		while (keys[i] != null && (hashes[i] != hash || !matches(keys[i], buf, off, len))) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Check if key is equal to the (ISO-8859-1) bytes in the buffer
+	 * 
+	 * @param key key
+	 * @param buf buffer
+	 * @param off start in buffer
+	 * @param len length in buffer
+	 * @return true if equal
+	 */
+	private static boolean matches(String key, ByteBuffer buf, int off, int len) {
+		if (key.length() != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (key.charAt(i) != (char) (buf.get(off + i) & 0xFF)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calculate hash code of bytes, same as the hash code of the ISO-8859-1 string
+	 * 
+	 * @param buf buffer
+	 * @param off start in buffer
+	 * @param len length in buffer
+	 * @return hash code
+	 */
+	private static int hash(ByteBuffer buf, int off, int len) {
+		int h = 0;
+		for (int i = 0; i < len; i++) {
+			h = 31 * h + (buf.get(off + i) & 0xFF);
+		}
+		return h;
+	}
+
+	/**
+	 * Store value in a (new or existing) slot
+	 * 
+	 * @param i slot
+	 * @param key key
+	 * @param hash hash code of the key
+	 * @param value value to add
+	 */
+	private void addToSlot(int i, String key, int hash, int value) {
+		if (keys[i] != null) {
+			values[i] += value;
+			return;
+		}
+		keys[i] = key;
+		hashes[i] = hash;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Resize the hash table
+	 * 
+	 * @param capacity new capacity, power of two
+	 */
+	private void resize(int capacity) {
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		int[] oldValues = values;
+
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+
+		if (oldKeys != null) {
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] != null) {
+					int i = slot(oldKeys[j], oldHashes[j]);
+					keys[i] = oldKeys[j];
+					hashes[i] = oldHashes[j];
+					values[i] = oldValues[j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add value to the value of a key, the key is added when not present
+	 * 
+	 * @param key key
+	 * @param value value
+	 */
+	public void add(String key, int value) {
+		int hash = key.hashCode();
+		addToSlot(slot(key, hash), key, hash, value);
+	}
+
+	/**
+	 * Add value to the value of a key, the key is read from a buffer (ISO-8859-1) and is added when not present
+	 * 
+	 * @param buf buffer
+	 * @param off start of the key in the buffer
+	 * @param len length of the key
+	 * @param value value
+	 */
+	public void add(ByteBuffer buf, int off, int len, int value) {
+		int hash = hash(buf, off, len);
+		int i = slot(buf, off, len, hash);
+		if (keys[i] != null) {
+			values[i] += value;
+			return;
+		}
+		byte[] b = new byte[len];
+		for (int j = 0; j < len; j++) {
+			b[j] = buf.get(off + j);
+		}
+		addToSlot(i, new String(b, StandardCharsets.ISO_8859_1), hash, value);
+	}
+
+	/**
+	 * Add all values of another map
+	 * 
+	 * @param other other map
+	 */
+	public void addAll(PopulationMap other) {
+		other.forEach(this::add);
+	}
+
+	/**
+	 * Check if the map contains a key
+	 * 
+	 * @param key key
+	 * @return true if present
+	 */
+	public boolean containsKey(String key) {
+		return keys[slot(key, key.hashCode())] != null;
+	}
+
+	/**
+	 * Get the value of a key
+	 * 
+	 * @param key key
+	 * @param missing value to return when key is not present
+	 * @return value or missing value
+	 */
+	public int get(String key, int missing) {
+		int i = slot(key, key.hashCode());
+		return (keys[i] != null) ? values[i] : missing;
+	}
+
+	/**
+	 * Get the value of a key, the key is read from a buffer (ISO-8859-1)
+	 * 
+	 * @param buf buffer
+	 * @param off start of the key in the buffer
+	 * @param len length of the key
+	 * @param missing value to return when key is not present
+	 * @return value or missing value
+	 */
+	public int get(ByteBuffer buf, int off, int len, int missing) {
+		int i = slot(buf, off, len, hash(buf, off, len));
+		return (keys[i] != null) ? values[i] : missing;
+	}
+
+	/**
+	 * Number of keys
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sum of all values
+	 * 
+	 * @return total
+	 */
+	public long total() {
+		long total = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				total += values[i];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Call consumer for each key and value
+	 * 
+	 * @param consumer consumer
+	 */
+	public void forEach(ObjIntConsumer<String> consumer) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				consumer.accept(keys[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param expected expected number of keys
+	 */
+	public PopulationMap(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) {
+			capacity <<= 1;
+		}
+		resize(capacity);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public PopulationMap() {
+		this(1024);
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-level parser for CSV with population per statistical sector.
+ * Only the requested columns are extracted, without creating intermediate Strings.
+ * 
+ * @author Bart Hanssens
+ */
+class PopulationParser {
+	// returned when a number could not be parsed
+	static final long INVALID = Long.MIN_VALUE;
+
+	/**
+	 * Handles the requested columns of a row
+	 */
+	interface RowHandler {
+		/**
+		 * Handle a row
+		 * 
+		 * @param buf buffer
+		 * @param starts start position of each requested column
+		 * @param ends end position (exclusive) of each requested column
+		 * @return false if the row is not valid
+		 */
+		boolean row(ByteBuffer buf, int[] starts, int[] ends);
+	}
+
+	private final int[] columns;
+	private final int maxColumn;
+	private final int[] starts;
+	private final int[] ends;
+	private final byte separator;
+	private final RowHandler handler;
+
+	private int skipLines;
+	private long lines = 0;
+	private long skipped = 0;
+
+	/**
+	 * Parse an integer
+	 * 
+	 * @param buf buffer
+	 * @param start start of the number
+	 * @param end end of the number (exclusive)
+	 * @return number or INVALID if not a valid (32-bit) number
+	 */
+	static long parseInt(ByteBuffer buf, int start, int end) {
+		boolean negative = false;
+		if (start < end && buf.get(start) == '-') {
+			negative = true;
+			start++;
+		}
+		if (start >= end) {
+			return INVALID;
+		}
+		long val = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buf.get(i) - '0';
+			if (digit < 0 || digit > 9 || val > Integer.MAX_VALUE) {
+				return INVALID;
+			}
+			val = val * 10 + digit;
+		}
+		if (val > Integer.MAX_VALUE) {
+			return INVALID;
+		}
+		return negative ? -val : val;
+	}
+
+	/**
+	 * Parse one line
+	 * 
+	 * @param buf buffer
+	 * @param start start of the line
+	 * @param end end of the line, excluding line feed
+	 */
+	private void parseLine(ByteBuffer buf, int start, int end) {
+		if (end > start && buf.get(end - 1) == '\r') {
+			end--;
+		}
+		if (skipLines > 0) {
+			skipLines--;
+			return;
+		}
+		if (end == start) {
+			return;
+		}
+		lines++;
+
+		int found = 0;
+		int col = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || buf.get(i) == separator) {
+				for (int j = 0; j < columns.length; j++) {
+					if (columns[j] == col) {
+						starts[j] = fieldStart;
+						ends[j] = i;
+						found++;
+					}
+				}
+				if (++col > maxColumn) {
+					break;
+				}
+				fieldStart = i + 1;
+			}
+		}
+
+		if (found < columns.length || !handler.row(buf, starts, ends)) {
+			skipped++;
+		}
+	}
+
+	/**
+	 * Parse all complete lines in (part of) a buffer.
+	 * 
+	 * @param buf buffer
+	 * @param start start position
+	 * @param end end position (exclusive)
+	 * @param last true if this is the end of the input, so the last line does not need a line feed
+	 * @return position after the last line that was parsed
+	 */
+	int parse(ByteBuffer buf, int start, int end, boolean last) {
+		int lineStart = start;
+		for (int i = start; i < end; i++) {
+			if (buf.get(i) == '\n') {
+				parseLine(buf, lineStart, i);
+				lineStart = i + 1;
+			}
+		}
+		if (last && lineStart < end) {
+			parseLine(buf, lineStart, end);
+			lineStart = end;
+		}
+		return lineStart;
+	}
+
+	/**
+	 * Get the number of (non-empty) lines parsed, excluding header
+	 * 
+	 * @return number of lines
+	 */
+	long getLines() {
+		return lines;
+	}
+
+	/**
+	 * Get the number of lines skipped because of missing columns or invalid numbers
+	 * 
+	 * @return number of lines
+	 */
+	long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param columns column numbers to extract (starting at 0)
+	 * @param separator column separator
+	 * @param skipLines number of lines to skip (e.g. header)
+	 * @param handler handler for the extracted columns
+	 */
+	PopulationParser(int[] columns, char separator, int skipLines, RowHandler handler) {
+		this.columns = columns;
+		this.starts = new int[columns.length];
+		this.ends = new int[columns.length];
+		this.separator = (byte) separator;
+		this.skipLines = skipLines;
+		this.handler = handler;
+
+		int max = 0;
+		for (int col: columns) {
+			max = Math.max(max, col);
+		}
+		this.maxColumn = max;
+	}
+}
@@ -25,13 +25,23 @@
  */
 package be.gov.data.populationperzip.reader;
 
+import be.gov.data.populationperzip.Parallel;
 import java.io.BufferedReader;
-
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 /**
@@ -41,22 +51,272 @@ import java.util.Map;
  * @author Bart Hanssens
  */
 public class PopulationReader {	
+	private final static Logger LOG = Logger.getLogger(PopulationReader.class.getName());
+
+	public static final int SECTOR_COLUMN = 3;
+	public static final int POPULATION_COLUMN = 9;
+	public static final char SEPARATOR = ';';
+
+	private final static int BUFFER_SIZE = 1 << 20;
+	private final static long MIN_PART_SIZE = 1 << 24;
+	private final static long MAX_PART_SIZE = 1 << 28;
+
+	/**
+	 * Create parser that adds the population of each row to a map
+	 * 
+	 * @param map map with NIS-code as key and population as value
+	 * @param skipLines number of lines to skip
+	 * @return parser
+	 */
+	private PopulationParser mapParser(PopulationMap map, int skipLines) {
+		return new PopulationParser(new int[] { SECTOR_COLUMN, POPULATION_COLUMN }, SEPARATOR, skipLines, 
+			(buf, starts, ends) -> {
+				long value = PopulationParser.parseInt(buf, starts[1], ends[1]);
+				if (value == PopulationParser.INVALID) {
+					return false;
+				}
+				map.add(buf, starts[0], ends[0] - starts[0], (int) value);
+				return true;
+			});
+	}
+
+	/**
+	 * Read a file in blocks of bytes
+	 * 
+	 * @param file file
+	 * @param parser parser
+	 * @throws IOException 
+	 */
+	private void readBlocks(Path file, PopulationParser parser) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			boolean eof = false;
+
+			while (!eof) {
+				eof = ch.read(buf) < 0;
+				buf.flip();
+				int pos = parser.parse(buf, buf.position(), buf.limit(), eof);
+				buf.position(pos);
+
+				if (!eof && pos == 0 && buf.limit() == buf.capacity()) {
+					// line does not fit in buffer
+					ByteBuffer larger = ByteBuffer.allocate(buf.capacity() * 2);
+					larger.put(buf);
+					buf = larger;
+				} else {
+					buf.compact();
+				}
+			}
+		}
+	}
+
 	/**
-	 * Read CSV file into map
+	 * Read the header (first line) of a file
+	 * 
+	 * @param file file
+	 * @return column names
+	 * @throws IOException 
+	 */
+	private String[] readHeader(Path file) throws IOException {
+		try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+			String line = r.readLine();
+			if (line == null) {
+				throw new IOException("Empty file " + file);
+			}
+			return line.split(String.valueOf(SEPARATOR));
+		}
+	}
+
+	/**
+	 * Read CSV file into map.
+	 * The file is read in blocks of bytes, and only the sector and population columns are parsed.
+	 * Population of rows with the same sector (e.g. breakdown per age or sex) is summed.
 	 * 
 	 * @param file
 	 * @return map with NIS-code as key and population as value
 	 * @throws IOException 
 	 */
-	public Map<String, Integer> read(Path file) throws IOException {
-		HashMap<String, Integer> map = new HashMap<>();
+	public PopulationMap read(Path file) throws IOException {
+		PopulationMap map = new PopulationMap(32_768);
+		PopulationParser parser = mapParser(map, 1);
+		readBlocks(file, parser);
+		logStats(parser.getLines(), parser.getSkipped(), map.size());
+		return map;
+	}
 
-		try (BufferedReader reader = Files.newBufferedReader(file)) {
-			reader.lines()
-				.skip(1)
-				.map(l -> l.split(";"))
-				.forEach(row -> map.put(row[3], Integer.valueOf(row[9])));
+	/**
+	 * Read CSV file into a table, keeping one or more extra columns (dimensions).
+	 * A numeric dimension can be grouped into bands of a given width, e.g. "CD_AGE/10" for age groups of 10 years.
+	 * 
+	 * @param file
+	 * @param groupBy column names, optionally followed by a slash and a band width
+	 * @return table
+	 * @throws IOException 
+	 */
+	public PopulationTable readTable(Path file, List<String> groupBy) throws IOException {
+		String[] header = readHeader(file);
+
+		String[] names = new String[groupBy.size()];
+		int[] widths = new int[groupBy.size()];
+		int[] columns = new int[groupBy.size() + 2];
+		columns[0] = SECTOR_COLUMN;
+		columns[1] = POPULATION_COLUMN;
+
+		for (int d = 0; d < names.length; d++) {
+			String[] spec = groupBy.get(d).split("/");
+			names[d] = spec[0].trim();
+			try {
+				widths[d] = (spec.length > 1) ? Integer.parseInt(spec[1].trim()) : 0;
+			} catch (NumberFormatException nfe) {
+				throw new IOException("Invalid width for column " + names[d], nfe);
+			}
+			columns[d + 2] = -1;
+			for (int c = 0; c < header.length; c++) {
+				if (header[c].trim().equalsIgnoreCase(names[d])) {
+					columns[d + 2] = c;
+				}
+			}
+			if (columns[d + 2] < 0) {
+				throw new IOException("Column " + names[d] + " not found in " + file);
+			}
+			if (widths[d] < 0) {
+				throw new IOException("Invalid width for column " + names[d]);
+			}
+		}
+
+		PopulationTable table = new PopulationTable(names, widths);
+		int[] dimCodes = new int[names.length];
+
+		PopulationParser parser = new PopulationParser(columns, SEPARATOR, 1, (buf, starts, ends) -> {
+			long value = PopulationParser.parseInt(buf, starts[1], ends[1]);
+			if (value == PopulationParser.INVALID) {
+				return false;
+			}
+			for (int d = 0; d < dimCodes.length; d++) {
+				if (widths[d] > 0) {
+					long num = PopulationParser.parseInt(buf, starts[d + 2], ends[d + 2]);
+					if (num == PopulationParser.INVALID) {
+						return false;
+					}
+					dimCodes[d] = table.band(d, (int) num);
+				} else {
+					dimCodes[d] = table.getDictionary(d).encode(buf, starts[d + 2], ends[d + 2] - starts[d + 2]);
+				}
+			}
+			int sector = table.getSectors().encode(buf, starts[0], ends[0] - starts[0]);
+			table.add(sector, dimCodes, (int) value);
+			return true;
+		});
+		readBlocks(file, parser);
+		logStats(parser.getLines(), parser.getSkipped(), table.getSectors().size());
+
+		return table;
+	}
+
+	/**
+	 * Log number of lines read
+	 * 
+	 * @param lines number of lines
+	 * @param skipped number of lines skipped
+	 * @param sectors number of sectors
+	 */
+	private void logStats(long lines, long skipped, int sectors) {
+		LOG.log(Level.INFO, "{0} lines, {1} sectors", new Object[] { lines, sectors });
+		if (skipped > 0) {
+			LOG.log(Level.WARNING, "{0} lines skipped", skipped);
+		}
+	}
+
+	/**
+	 * Find the start of the next line
+	 * 
+	 * @param ch file channel
+	 * @param pos position to start searching from
+	 * @param size size of the file
+	 * @return position after the next line feed, or size of the file
+	 * @throws IOException 
+	 */
+	private long nextLine(FileChannel ch, long pos, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		while (pos < size) {
+			buf.clear();
+			int len = ch.read(buf, pos);
+			if (len <= 0) {
+				break;
+			}
+			for (int i = 0; i < len; i++) {
+				if (buf.get(i) == '\n') {
+					return pos + i + 1;
+				}
+			}
+			pos += len;
+		}
+		return size;
+	}
+
+	/**
+	 * Parse a memory mapped part of the file
+	 * 
+	 * @param ch file channel
+	 * @param start start of the part
+	 * @param end end of the part (exclusive)
+	 * @param map map to store results in
+	 * @return parser
+	 * @throws IOException 
+	 */
+	private PopulationParser parseMapped(FileChannel ch, long start, long end, PopulationMap map) throws IOException {
+		PopulationParser parser = mapParser(map, (start == 0) ? 1 : 0);
+		MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		parser.parse(buf, 0, buf.limit(), true);
+		return parser;
+	}
+
+	/**
+	 * Read CSV file into map, using memory mapping instead of copying (and decoding) blocks of bytes.
+	 * Large files are split into parts at line boundaries, the parts are parsed in parallel and merged.
+	 * 
+	 * @param file
+	 * @param threads number of threads
+	 * @return map with NIS-code as key and population as value
+	 * @throws IOException 
+	 */
+	public PopulationMap readMapped(Path file, int threads) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = ch.size();
+			long partSize = Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE, size / Math.max(threads, 1) + 1));
+
+			List<long[]> parts = new ArrayList<>();
+			long start = 0;
+			while (start < size) {
+				long end = nextLine(ch, Math.min(start + partSize, size), size);
+				parts.add(new long[] { start, end });
+				start = end;
+			}
+			LOG.log(Level.INFO, "Mapping {0} bytes in {1} parts", new Object[] { size, parts.size() });
+
+			PopulationMap[] maps = new PopulationMap[parts.size()];
+			List<PopulationParser> parsers = Parallel.submit(threads, () -> IntStream.range(0, maps.length).parallel()
+											.mapToObj(i -> {
+												try {
+													maps[i] = new PopulationMap(32_768);
+													return parseMapped(ch, parts.get(i)[0], parts.get(i)[1], maps[i]);
+												} catch (IOException ioe) {
+													throw new UncheckedIOException(ioe);
+												}
+											})
+											.collect(Collectors.toList()));
+
+			// merge the results of all parts
+			PopulationMap map = new PopulationMap(32_768);
+			long lines = 0;
+			long skipped = 0;
+			for (int i = 0; i < maps.length; i++) {
+				map.addAll(maps[i]);
+				lines += parsers.get(i).getLines();
+				skipped += parsers.get(i).getSkipped();
+			}
+			logStats(lines, skipped, map.size());
+			return map;
 		}
-		return map;
 	}
 }
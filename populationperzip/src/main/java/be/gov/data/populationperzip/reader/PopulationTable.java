@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.util.Arrays;
+
+/**
+ * Population per statistical sector and one or more dimensions (e.g. year, sex, age group), stored per column.
+ * Sectors and dimension values are dictionary encoded, numeric dimensions can be grouped in bands (e.g. age groups).
+ * 
+ * @author Bart Hanssens
+ */
+public class PopulationTable {
+	private final String[] names;
+	private final int[] widths;
+	private final Dictionary sectors = new Dictionary();
+	private final Dictionary[] dictionaries;
+	private final int[][] bands;
+
+	private int[] sectorCodes = new int[4096];
+	private final int[][] codes;
+	private int[] population = new int[4096];
+	private int rows = 0;
+
+	/**
+	 * Add a row
+	 * 
+	 * @param sector sector code
+	 * @param dimCodes code of each dimension
+	 * @param pop population
+	 */
+	void add(int sector, int[] dimCodes, int pop) {
+		if (rows == population.length) {
+			int capacity = rows * 2;
+			sectorCodes = Arrays.copyOf(sectorCodes, capacity);
+			population = Arrays.copyOf(population, capacity);
+			for (int d = 0; d < codes.length; d++) {
+				codes[d] = Arrays.copyOf(codes[d], capacity);
+			}
+		}
+		sectorCodes[rows] = sector;
+		for (int d = 0; d < codes.length; d++) {
+			codes[d][rows] = dimCodes[d];
+		}
+		population[rows] = pop;
+		rows++;
+	}
+
+	/**
+	 * Get the code of the band (e.g. "20-29") a numeric value belongs to
+	 * 
+	 * @param dim dimension
+	 * @param value numeric value
+	 * @return code
+	 */
+	int band(int dim, int value) {
+		int width = widths[dim];
+		int idx = Math.floorDiv(value, width);
+		if (idx < 0 || idx >= bands[dim].length) {
+			int lower = idx * width;
+			return dictionaries[dim].encode(lower + "-" + (lower + width - 1));
+		}
+		if (bands[dim][idx] < 0) {
+			int lower = idx * width;
+			bands[dim][idx] = dictionaries[dim].encode(lower + "-" + (lower + width - 1));
+		}
+		return bands[dim][idx];
+	}
+
+	/**
+	 * Get the population per sector, summed over all dimensions
+	 * 
+	 * @return map with NIS-code as key and population as value
+	 */
+	public PopulationMap totals() {
+		int[] sums = new int[sectors.size()];
+		for (int r = 0; r < rows; r++) {
+			sums[sectorCodes[r]] += population[r];
+		}
+		PopulationMap map = new PopulationMap(sums.length);
+		for (int s = 0; s < sums.length; s++) {
+			map.add(sectors.decode(s), sums[s]);
+		}
+		return map;
+	}
+
+	/**
+	 * Get the number of rows
+	 * 
+	 * @return number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Get the sector code of a row
+	 * 
+	 * @param row row number
+	 * @return sector code
+	 */
+	public int sector(int row) {
+		return sectorCodes[row];
+	}
+
+	/**
+	 * Get the code of a dimension of a row
+	 * 
+	 * @param dim dimension
+	 * @param row row number
+	 * @return code
+	 */
+	public int code(int dim, int row) {
+		return codes[dim][row];
+	}
+
+	/**
+	 * Get the population of a row
+	 * 
+	 * @param row row number
+	 * @return population
+	 */
+	public int population(int row) {
+		return population[row];
+	}
+
+	/**
+	 * Get the sector dictionary
+	 * 
+	 * @return dictionary
+	 */
+	public Dictionary getSectors() {
+		return sectors;
+	}
+
+	/**
+	 * Get the dictionary of a dimension
+	 * 
+	 * @param dim dimension
+	 * @return dictionary
+	 */
+	public Dictionary getDictionary(int dim) {
+		return dictionaries[dim];
+	}
+
+	/**
+	 * Get the names of the dimensions
+	 * 
+	 * @return names
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Get the band width of a dimension
+	 * 
+	 * @param dim dimension
+	 * @return width, or 0 if not grouped in bands
+	 */
+	public int getWidth(int dim) {
+		return widths[dim];
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param names names of the dimensions
+	 * @param widths band width of each dimension, 0 for non-numeric dimensions
+	 */
+	public PopulationTable(String[] names, int[] widths) {
+		this.names = names;
+		this.widths = widths;
+		this.dictionaries = new Dictionary[names.length];
+		this.bands = new int[names.length][];
+		this.codes = new int[names.length][];
+
+		for (int d = 0; d < names.length; d++) {
+			dictionaries[d] = new Dictionary();
+			bands[d] = new int[(widths[d] > 0) ? 256 : 0];
+			Arrays.fill(bands[d], -1);
+			codes[d] = new int[population.length];
+		}
+	}
+}
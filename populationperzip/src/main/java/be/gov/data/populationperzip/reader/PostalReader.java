@@ -25,17 +25,23 @@
  */
 package be.gov.data.populationperzip.reader;
 
+import be.gov.data.populationperzip.Parallel;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger
 	;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.MultiPolygon;
-import org.opengis.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
 
 /**
  * Reads postal (zipcode) sectors
@@ -48,6 +54,35 @@ public class PostalReader extends GeoReader {
 	
 	public static final String ZIPCODE = "nouveau_PO";
 
+	private final int threads;
+
+	/**
+	 * Merge the regions of one zip code into one shape.
+	 * All parts are merged in one (cascaded) union, instead of one by one.
+	 * 
+	 * @param zipcode zip code
+	 * @param parts one or more regions
+	 * @return merged shape
+	 */
+	private MultiPolygon merge(String zipcode, List<Geometry> parts) {
+		if (parts.size() == 1) {
+			return (MultiPolygon) parts.get(0);
+		}
+
+		long start = System.nanoTime();
+		Geometry geom = UnaryUnionOp.union(parts);
+		long ms = (System.nanoTime() - start) / 1_000_000;
+
+		LOG.log(Level.INFO, "Merged {0} regions with same zipcode {1} in {2} ms", 
+								new Object[] { parts.size(), zipcode, ms });
+
+		// union of adjacent regions may result in a single polygon
+		if (geom instanceof Polygon) {
+			return geom.getFactory().createMultiPolygon(new Polygon[] { (Polygon) geom });
+		}
+		return (MultiPolygon) geom;
+	}
+
 	/**
 	 * Read postal sectors shapefile into map
 	 * 
@@ -56,27 +91,45 @@ public class PostalReader extends GeoReader {
 	 * @throws IOException 
 	 */
 	public Map<String, MultiPolygon> read(Path indir) throws IOException {
-		HashMap<String, MultiPolygon>  map = new HashMap<>();
+		// first collect all regions per zipcode (multiple regions may have the same zipcode)
+		Map<String, List<Geometry>> parts = new HashMap<>();
 
-		SimpleFeatureCollection collection = getFeatures(indir.toFile());
-		
-		try (SimpleFeatureIterator features = collection.features()) {
-			while (features.hasNext()) {
-				SimpleFeature feature = features.next();
-				
-				String zipcode = getProperty(feature, ZIPCODE);
-				MultiPolygon geom = (MultiPolygon) feature.getDefaultGeometry();
+		forEachFeature(indir.toFile(), feature -> {
+			String zipcode = getProperty(feature, ZIPCODE);
+			Geometry geom = (Geometry) feature.getDefaultGeometry();
+			parts.computeIfAbsent(zipcode, k -> new ArrayList<>(1)).add(geom);
+		});
 
-				// check for existing / multiple regions with same zipcode
-				MultiPolygon mp = map.get(zipcode);
-				if (mp != null) {
-					LOG.log(Level.INFO, "Multiple regions with same zipcode {0}", zipcode);
-					geom = (MultiPolygon) geom.union(mp);
-				}
-
-				map.put(zipcode, geom);
-			}
+		if (threads <= 1) {
+			return merge(parts.entrySet().stream());
 		}
-		return map;
+
+		return Parallel.submit(threads, () -> merge(parts.entrySet().parallelStream()));
+	}
+
+	/**
+	 * Merge the regions per zip code
+	 * 
+	 * @param stream stream of regions per zip code
+	 * @return map with postal code as key and shape as value
+	 */
+	private Map<String, MultiPolygon> merge(Stream<Map.Entry<String, List<Geometry>>> stream) {
+		return stream.collect(Collectors.toMap(e -> e.getKey(), e -> merge(e.getKey(), e.getValue())));
+	}
+
+	/**
+	 * Constructor, merging regions with the same zip code using one or more threads
+	 * 
+	 * @param threads number of threads
+	 */
+	public PostalReader(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Constructor
+	 */
+	public PostalReader() {
+		this(1);
 	}
 }
\ No newline at end of file
@@ -29,12 +29,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
-import org.opengis.feature.simple.SimpleFeature;
 
 /**
  * Read statistic sector shapefiles
@@ -45,29 +43,47 @@ public class SectorReader extends GeoReader {
 	public static final String NIS = "cd_sector";
 
 	/**
+	 * Read sectors and convert each shape
 	 * 
-	 * @param file
-	 * @return 
+	 * @param <T> type of the converted shape
+	 * @param file GeoJSON file
+	 * @param fun conversion function
+	 * @return map with NIS-code as key and converted shape as value
 	 * @throws IOException 
 	 */
-	public Map<String,Point> read(Path file) throws IOException {
-		HashMap<String, Point>  map = new HashMap<>();
+	private <T> Map<String, T> read(Path file, Function<Geometry, T> fun) throws IOException {
+		HashMap<String, T>  map = new HashMap<>();
 
-		SimpleFeatureCollection collection = getFeatures(file.toFile());
-		
-		try (SimpleFeatureIterator features = collection.features()) {
-			while (features.hasNext()) {
-				SimpleFeature feature = features.next();
-				
-				// Get the NIS code, which should alway be present, this is NOT the postal code
-				String nis = getProperty(feature, NIS);
+		forEachFeature(file.toFile(), feature -> {
+			// Get the NIS code, which should alway be present, this is NOT the postal code
+			String nis = getProperty(feature, NIS);
 
-				// Get the coordinates
-				Geometry geom = (Geometry) feature.getDefaultGeometry();
-				Point center = geom.getInteriorPoint();
-				map.put(nis, center);
-			}
-		}
+			// Get the coordinates, only keep the converted shape
+			Geometry geom = (Geometry) feature.getDefaultGeometry();
+			map.put(nis, fun.apply(geom));
+		});
 		return map;
 	}
+
+	/**
+	 * Read the "interior point" of each sector
+	 * 
+	 * @param file GeoJSON file
+	 * @return map with NIS-code as key and interior point as value
+	 * @throws IOException 
+	 */
+	public Map<String,Point> read(Path file) throws IOException {
+		return read(file, Geometry::getInteriorPoint);
+	}
+
+	/**
+	 * Read the full shape of each sector
+	 * 
+	 * @param file GeoJSON file
+	 * @return map with NIS-code as key and shape as value
+	 * @throws IOException 
+	 */
+	public Map<String,Geometry> readGeometries(Path file) throws IOException {
+		return read(file, Function.identity());
+	}
 }
\ No newline at end of file
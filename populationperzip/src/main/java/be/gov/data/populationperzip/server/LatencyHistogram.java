@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, in microseconds.
+ * 
+ * Values below 32 have their own bucket, larger values are grouped per power of two,
+ * each split into 16 sub-buckets, so the relative error of the percentiles is less than 7%.
+ * 
+ * @author Bart Hanssens
+ */
+public class LatencyHistogram {
+	private final static int LINEAR = 32;
+	private final static int SUB_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BITS;
+	private final static int BUCKETS = LINEAR + (63 - 5 + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Get the bucket of a value
+	 * 
+	 * @param value value
+	 * @return bucket index
+	 */
+	private static int bucket(long value) {
+		if (value < LINEAR) {
+			return (int) Math.max(0, value);
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exp - 5) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Get the highest value of a bucket
+	 * 
+	 * @param bucket bucket index
+	 * @return value
+	 */
+	private static long highest(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int exp = (bucket - LINEAR) / SUB_BUCKETS + 5;
+		int sub = (bucket - LINEAR) % SUB_BUCKETS;
+		long low = (long) (SUB_BUCKETS + sub) << (exp - SUB_BITS);
+		return low + (1L << (exp - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Record a latency
+	 * 
+	 * @param micros latency in microseconds
+	 */
+	public void record(long micros) {
+		buckets.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		max.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * Get the number of recorded latencies
+	 * 
+	 * @return count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Get the highest recorded latency
+	 * 
+	 * @return latency in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get a percentile, e.g. 0.99 for the 99th percentile
+	 * 
+	 * @param p percentile between 0 and 1
+	 * @return (approximate) latency in microseconds, or 0 when nothing was recorded
+	 */
+	public long percentile(double p) {
+		long total = 0;
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = buckets.get(i);
+			total += copy[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += copy[i];
+			if (seen >= rank) {
+				return Math.min(highest(i), getMax());
+			}
+		}
+		return getMax();
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.server;
+
+import be.gov.data.populationperzip.locator.PostalLocator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.geometry.jts.JTS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * Small HTTP service to look up postal codes, with the postal districts and sector mapping loaded only once.
+ * 
+ * <ul>
+ * <li><code>/zip?lat=50.85&amp;lon=4.35</code>: postal code of a WGS84 coordinate</li>
+ * <li><code>/zip?x=149000&amp;y=170000</code>: postal code of a coordinate in the CRS of the postal districts</li>
+ * <li><code>/sector/21004A00-</code>: postal code of a statistical sector</li>
+ * <li><code>/metrics</code>: number of requests and latency percentiles per endpoint</li>
+ * </ul>
+ * 
+ * Results are returned as JSON.
+ * 
+ * @author Bart Hanssens
+ */
+public class LookupServer {
+	private final static Logger LOG = Logger.getLogger(LookupServer.class.getName());
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final PostalLocator locator;
+	private final MathTransform transform;
+	private final Map<String, String> sectorZips;
+	private final GeometryFactory factory = new GeometryFactory();
+	private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+	/**
+	 * Escape a string for JSON
+	 * 
+	 * @param str string
+	 * @return quoted and escaped string, or null
+	 */
+	private static String quote(String str) {
+		if (str == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(str.length() + 2).append('"');
+		for (char c: str.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Parse the query parameters of a request
+	 * 
+	 * @param ex HTTP exchange
+	 * @return map with parameter name as key and value as value
+	 */
+	private static Map<String, String> params(HttpExchange ex) {
+		Map<String, String> map = new HashMap<>();
+		String query = ex.getRequestURI().getRawQuery();
+		if (query == null) {
+			return map;
+		}
+		for (String param: query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0) {
+				map.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Send a JSON response
+	 * 
+	 * @param ex HTTP exchange
+	 * @param status HTTP status code
+	 * @param json JSON body
+	 * @throws IOException 
+	 */
+	private static void send(HttpExchange ex, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		ex.sendResponseHeaders(status, body.length);
+		try (OutputStream os = ex.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	/**
+	 * Send an error message
+	 * 
+	 * @param ex HTTP exchange
+	 * @param status HTTP status code
+	 * @param msg error message
+	 * @throws IOException 
+	 */
+	private static void error(HttpExchange ex, int status, String msg) throws IOException {
+		send(ex, status, "{\"error\":" + quote(msg) + "}");
+	}
+
+	/**
+	 * Parse a numeric parameter
+	 * 
+	 * @param params query parameters
+	 * @param name parameter name
+	 * @return value or NaN when missing or not a number
+	 */
+	private static double number(Map<String, String> params, String name) {
+		try {
+			String value = params.get(name);
+			return (value != null) ? Double.parseDouble(value) : Double.NaN;
+		} catch (NumberFormatException nfe) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Find the postal code of a coordinate
+	 * 
+	 * @param ex HTTP exchange
+	 * @throws IOException 
+	 */
+	private void handleZip(HttpExchange ex) throws IOException {
+		Map<String, String> params = params(ex);
+		double x;
+		double y;
+
+		if (params.containsKey("lat") || params.containsKey("lon")) {
+			double lat = number(params, "lat");
+			double lon = number(params, "lon");
+			if (Double.isNaN(lat) || Double.isNaN(lon)) {
+				error(ex, 400, "Parameters lat and lon must be numbers");
+				return;
+			}
+			if (transform == null) {
+				error(ex, 400, "Coordinate reference system of the postal districts is unknown, use x and y");
+				return;
+			}
+			try {
+				// WGS84 in GeoTools uses longitude / latitude order
+				Coordinate c = JTS.transform(new Coordinate(lon, lat), null, transform);
+				x = c.x;
+				y = c.y;
+			} catch (TransformException te) {
+				error(ex, 400, "Could not transform coordinate: " + te.getMessage());
+				return;
+			}
+		} else {
+			x = number(params, "x");
+			y = number(params, "y");
+			if (Double.isNaN(x) || Double.isNaN(y)) {
+				error(ex, 400, "Parameters lat and lon, or x and y, are required");
+				return;
+			}
+		}
+
+		String zip = locator.locate(factory.createPoint(new Coordinate(x, y)));
+		String json = String.format(Locale.ROOT, "{\"x\":%.2f,\"y\":%.2f,\"zip\":%s}", x, y, quote(zip));
+		send(ex, (zip != null) ? 200 : 404, json);
+	}
+
+	/**
+	 * Find the postal code of a statistical sector
+	 * 
+	 * @param ex HTTP exchange
+	 * @throws IOException 
+	 */
+	private void handleSector(HttpExchange ex) throws IOException {
+		String path = ex.getRequestURI().getPath();
+		String nis = path.substring(path.lastIndexOf('/') + 1);
+		if (nis.isEmpty()) {
+			error(ex, 400, "Sector code is required, e.g. /sector/21004A00-");
+			return;
+		}
+		String zip = sectorZips.get(nis);
+		if (zip == null || zip.isEmpty()) {
+			error(ex, 404, "No zipcode for sector " + nis);
+			return;
+		}
+		send(ex, 200, "{\"sector\":" + quote(nis) + ",\"zip\":" + quote(zip) + "}");
+	}
+
+	/**
+	 * Return the number of requests and latency percentiles
+	 * 
+	 * @param ex HTTP exchange
+	 * @throws IOException 
+	 */
+	private void handleMetrics(HttpExchange ex) throws IOException {
+		StringBuilder sb = new StringBuilder("{");
+		for (Map.Entry<String, LatencyHistogram> e: latencies.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append(quote(e.getKey())).append(String.format(Locale.ROOT, 
+				":{\"count\":%d,\"p50_us\":%d,\"p99_us\":%d,\"max_us\":%d}",
+				h.getCount(), h.percentile(0.5), h.percentile(0.99), h.getMax()));
+		}
+		send(ex, 200, sb.append('}').toString());
+	}
+
+	/**
+	 * Wrap a handler to record the latency, and return an error when the handler fails before sending a response
+	 * 
+	 * @param name name of the endpoint
+	 * @param handler handler
+	 * @return wrapped handler
+	 */
+	private HttpHandler timed(String name, HttpHandler handler) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		latencies.put(name, histogram);
+
+		return ex -> {
+			long start = System.nanoTime();
+			try {
+				if (!ex.getRequestMethod().equals("GET")) {
+					error(ex, 405, "Only GET is supported");
+				} else {
+					handler.handle(ex);
+				}
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Error handling {0}: {1}", new Object[] { ex.getRequestURI(), e.getMessage() });
+				// response code is only set when the headers were sent, and then it is too late to send an error
+				if (ex.getResponseCode() < 0) {
+					error(ex, 500, "Internal error");
+				}
+			} finally {
+				ex.close();
+				histogram.record((System.nanoTime() - start) / 1000);
+			}
+		};
+	}
+
+	/**
+	 * Start the server
+	 */
+	public void start() {
+		server.start();
+		LOG.log(Level.INFO, "Listening on port {0}", server.getAddress().getPort());
+	}
+
+	/**
+	 * Stop the server, waiting at most a few seconds for running requests
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		locator.logStats();
+	}
+
+	/**
+	 * Get the port the server is listening on (useful when started on port 0)
+	 * 
+	 * @return port number
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param port port number, or 0 for any free port
+	 * @param threads number of threads handling requests
+	 * @param locator locator for all zip codes
+	 * @param transform transformation from WGS84 to the CRS of the postal districts, or null
+	 * @param sectorZips zip code per sector ID
+	 * @throws IOException when the server could not be created
+	 */
+	public LookupServer(int port, int threads, PostalLocator locator, MathTransform transform, 
+						Map<String, String> sectorZips) throws IOException {
+		this.locator = locator;
+		this.transform = transform;
+		this.sectorZips = sectorZips;
+
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+
+		server.createContext("/zip", timed("zip", this::handleZip));
+		server.createContext("/sector/", timed("sector", this::handleSector));
+		server.createContext("/metrics", timed("metrics", this::handleMetrics));
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+/**
+ * Writes the results as an Apache Arrow IPC file (also known as Feather V2), 
+ * which can be read by e.g. pandas, R and DuckDB.
+ * 
+ * <ul>
+ * <li>One string column per key dimension (zip code and extra dimensions), dictionary encoded with int32 indices</li>
+ * <li>"Population" column (int32)</li>
+ * <li>"Fraction" column (float64), only when the population is split over zip codes</li>
+ * </ul>
+ * 
+ * All rows are written in one record batch, none of the columns contain null values.
+ * 
+ * @author Bart Hanssens
+ */
+public class ArrowResultWriter implements ResultWriter {
+	private final static ArrowType.Int INT32 = new ArrowType.Int(32, true);
+
+	private final int bufferSize;
+
+	/**
+	 * Create a dictionary encoded string column
+	 * 
+	 * @param allocator memory allocator
+	 * @param name column name
+	 * @param id dictionary ID
+	 * @param values value per row
+	 * @param provider dictionaries, the dictionary of this column will be added
+	 * @return index vector
+	 */
+	private static IntVector encode(BufferAllocator allocator, String name, long id, String[] values, 
+									DictionaryProvider.MapDictionaryProvider provider) {
+		Map<String, Integer> codes = new LinkedHashMap<>();
+		DictionaryEncoding encoding = new DictionaryEncoding(id, false, INT32);
+
+		IntVector indices = new IntVector(name, new FieldType(false, INT32, encoding), allocator);
+		indices.allocateNew(values.length);
+		for (int i = 0; i < values.length; i++) {
+			Integer code = codes.get(values[i]);
+			if (code == null) {
+				code = codes.size();
+				codes.put(values[i], code);
+			}
+			indices.set(i, code);
+		}
+		indices.setValueCount(values.length);
+
+		VarCharVector dict = new VarCharVector(name, FieldType.notNullable(ArrowType.Utf8.INSTANCE), allocator);
+		dict.allocateNew(codes.size());
+		int i = 0;
+		for (String value: codes.keySet()) {
+			dict.setSafe(i++, value.getBytes(StandardCharsets.UTF_8));
+		}
+		dict.setValueCount(codes.size());
+		provider.put(new Dictionary(dict, encoding));
+
+		return indices;
+	}
+
+	@Override
+	public void write(ResultTable table, String keyHeader, Path file) throws IOException {
+		String[] keyNames = keyHeader.split(";", -1);
+		int rows = table.size();
+
+		// split the keys into one column per dimension
+		String[][] keyColumns = new String[keyNames.length][rows];
+		for (int i = 0; i < rows; i++) {
+			String[] parts = table.getKey(i).split(";", -1);
+			for (int c = 0; c < keyNames.length; c++) {
+				keyColumns[c][i] = (c < parts.length) ? parts[c] : "";
+			}
+		}
+
+		DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+		List<FieldVector> vectors = new ArrayList<>();
+
+		try (BufferAllocator allocator = new RootAllocator()) {
+			try {
+				for (int c = 0; c < keyNames.length; c++) {
+					vectors.add(encode(allocator, keyNames[c], c, keyColumns[c], provider));
+				}
+
+				IntVector population = new IntVector("Population", FieldType.notNullable(INT32), allocator);
+				vectors.add(population);
+				population.allocateNew(rows);
+				for (int i = 0; i < rows; i++) {
+					population.set(i, table.getPopulation(i));
+				}
+				population.setValueCount(rows);
+
+				if (table.hasFractions()) {
+					Float8Vector fraction = new Float8Vector("Fraction", 
+						FieldType.notNullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), allocator);
+					vectors.add(fraction);
+					fraction.allocateNew(rows);
+					for (int i = 0; i < rows; i++) {
+						fraction.set(i, table.getFraction(i));
+					}
+					fraction.setValueCount(rows);
+				}
+
+				try (VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+					OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), bufferSize);
+					ArrowFileWriter writer = new ArrowFileWriter(root, provider, Channels.newChannel(out))) {
+					writer.start();
+					writer.writeBatch();
+					writer.end();
+				}
+			} finally {
+				for (FieldVector vector: vectors) {
+					vector.close();
+				}
+				for (long id: provider.getDictionaryIds()) {
+					provider.lookup(id).getVector().close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bufferSize size of the output buffer, in bytes
+	 */
+	public ArrowResultWriter(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes bytes to a file using a (large) direct buffer, optionally compressed as gzip
+ * 
+ * @author Bart Hanssens
+ */
+class ChannelOutput implements Closeable {
+	private final static byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private final FileChannel channel;
+	private final ByteBuffer buf;
+	private final byte[] digits = new byte[20];
+
+	// only used for gzip
+	private final Deflater deflater;
+	private final CRC32 crc;
+	private final ByteBuffer compressed;
+	private long size;
+
+	/**
+	 * Write a buffer completely to the file
+	 * 
+	 * @param b buffer, ready for reading
+	 * @throws IOException 
+	 */
+	private void writeFully(ByteBuffer b) throws IOException {
+		while (b.hasRemaining()) {
+			channel.write(b);
+		}
+	}
+
+	/**
+	 * Compress the input, and write the compressed bytes when the compression buffer is full
+	 * 
+	 * @param finish true to finish the compressed stream
+	 * @throws IOException 
+	 */
+	private void deflate(boolean finish) throws IOException {
+		if (finish) {
+			deflater.finish();
+		}
+		while (finish ? !deflater.finished() : !deflater.needsInput()) {
+			deflater.deflate(compressed);
+			if (!compressed.hasRemaining() || deflater.finished()) {
+				compressed.flip();
+				writeFully(compressed);
+				compressed.clear();
+			}
+		}
+	}
+
+	/**
+	 * Write the buffer to the file (compressed or not) and clear the buffer
+	 * 
+	 * @throws IOException 
+	 */
+	void flush() throws IOException {
+		buf.flip();
+		if (deflater == null) {
+			writeFully(buf);
+		} else {
+			size += buf.remaining();
+			// the deflater keeps a reference to its input, so give it a view that is not reset by clear()
+			deflater.setInput(buf.duplicate());
+			crc.update(buf);
+			deflate(false);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Make sure the buffer has room for a number of bytes
+	 * 
+	 * @param bytes number of bytes
+	 * @return buffer
+	 * @throws IOException 
+	 */
+	ByteBuffer ensure(int bytes) throws IOException {
+		if (buf.remaining() < bytes) {
+			flush();
+		}
+		return buf;
+	}
+
+	/**
+	 * Put an array of bytes, which may be larger than the buffer
+	 * 
+	 * @param bytes bytes
+	 * @throws IOException 
+	 */
+	void put(byte[] bytes) throws IOException {
+		int pos = 0;
+		while (pos < bytes.length) {
+			if (!buf.hasRemaining()) {
+				flush();
+			}
+			int len = Math.min(buf.remaining(), bytes.length - pos);
+			buf.put(bytes, pos, len);
+			pos += len;
+		}
+	}
+
+	/**
+	 * Put a single byte
+	 * 
+	 * @param b byte
+	 * @throws IOException 
+	 */
+	void put(byte b) throws IOException {
+		ensure(1).put(b);
+	}
+
+	/**
+	 * Put a number as (ASCII) decimal digits, without creating a string
+	 * 
+	 * @param value number
+	 * @throws IOException 
+	 */
+	void putDecimal(long value) throws IOException {
+		ensure(digits.length + 1);
+		if (value == Long.MIN_VALUE) {
+			buf.put(Long.toString(value).getBytes());
+			return;
+		}
+		if (value < 0) {
+			buf.put((byte) '-');
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		while (n > 0) {
+			buf.put(digits[--n]);
+		}
+	}
+
+	/**
+	 * Flush the buffer, finish the gzip stream (if any) and close the file
+	 * 
+	 * @throws IOException 
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			if (deflater != null) {
+				deflate(true);
+				ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+				trailer.putInt((int) crc.getValue()).putInt((int) size).flip();
+				writeFully(trailer);
+				deflater.end();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param file output file
+	 * @param bufferSize size of the buffer in bytes
+	 * @param gzip compress as gzip
+	 * @param order byte order of binary numbers
+	 * @throws IOException 
+	 */
+	ChannelOutput(Path file, int bufferSize, boolean gzip, ByteOrder order) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+											StandardOpenOption.TRUNCATE_EXISTING);
+		this.buf = ByteBuffer.allocateDirect(Math.max(bufferSize, 64)).order(order);
+
+		if (gzip) {
+			this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			this.crc = new CRC32();
+			this.compressed = ByteBuffer.allocateDirect(Math.max(bufferSize / 4, 64));
+			writeFully(ByteBuffer.wrap(GZIP_HEADER));
+		} else {
+			this.deflater = null;
+			this.crc = null;
+			this.compressed = null;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Writes the results as CSV (separated by ";"), optionally compressed as gzip.
+ * Rows are written directly from the table into a byte buffer, without creating a string per row.
+ * 
+ * @author Bart Hanssens
+ */
+public class CsvResultWriter implements ResultWriter {
+	private final static byte SEPARATOR = ';';
+	private final static byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+	private final static int SCALE = 10_000;
+
+	private final int bufferSize;
+	private final boolean gzip;
+
+	/**
+	 * Write a fraction with 4 decimals, rounded half up like String.format("%.4f")
+	 * 
+	 * @param out output
+	 * @param value value
+	 * @throws IOException 
+	 */
+	private static void putFraction(ChannelOutput out, double value) throws IOException {
+		double scaled = Math.abs(value) * SCALE;
+		if (!(scaled < Long.MAX_VALUE / 10) || Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-6) {
+			// too close to call, too large or not a number: use String.format for the exact same result
+			out.put(String.format(Locale.ROOT, "%.4f", value).getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+
+		long rounded = Math.round(scaled);
+		// like String.format, keep the sign of negative values rounded to zero
+		if (Math.copySign(1.0, value) < 0) {
+			out.put((byte) '-');
+		}
+		out.putDecimal(rounded / SCALE);
+		out.put((byte) '.');
+
+		long frac = rounded % SCALE;
+		for (int div = SCALE / 10; div > 0; div /= 10) {
+			out.put((byte) ('0' + (frac / div) % 10));
+		}
+	}
+
+	@Override
+	public void write(ResultTable table, String keyHeader, Path file) throws IOException {
+		try (ChannelOutput out = new ChannelOutput(file, bufferSize, gzip, ByteOrder.BIG_ENDIAN)) {
+			String header = keyHeader + (table.hasFractions() ? ";Population;Fraction" : ";Population");
+			out.put(header.getBytes(StandardCharsets.UTF_8));
+			out.put(NEWLINE);
+
+			for (int i = 0; i < table.size(); i++) {
+				out.put(table.getKey(i).getBytes(StandardCharsets.UTF_8));
+				out.put(SEPARATOR);
+				out.putDecimal(table.getPopulation(i));
+				if (table.hasFractions()) {
+					out.put(SEPARATOR);
+					putFraction(out, table.getFraction(i));
+				}
+				out.put(NEWLINE);
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bufferSize size of the output buffer, in bytes
+	 * @param gzip compress as gzip
+	 */
+	public CsvResultWriter(int bufferSize, boolean gzip) {
+		this.bufferSize = bufferSize;
+		this.gzip = gzip;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Results sorted by key, stored in arrays per column
+ * 
+ * @author Bart Hanssens
+ */
+public class ResultTable {
+	private final static Pattern LEADING_NUMBER = Pattern.compile("^-?\\d{1,18}");
+
+	private final String[] keys;
+	private final int[] population;
+	private final double[] fractions;
+
+	/**
+	 * Key split into its values, with the leading number (if any) of each value parsed only once
+	 */
+	private static class SortKey implements Comparable<SortKey> {
+		private final static long NO_NUMBER = Long.MIN_VALUE;
+
+		private final String key;
+		private final String[] values;
+		private final long[] numbers;
+
+		@Override
+		public int compareTo(SortKey o) {
+			for (int i = 0; i < Math.min(values.length, o.values.length); i++) {
+				if (numbers[i] != NO_NUMBER && o.numbers[i] != NO_NUMBER) {
+					int cmp = Long.compare(numbers[i], o.numbers[i]);
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				int cmp = values[i].compareTo(o.values[i]);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return Integer.compare(values.length, o.values.length);
+		}
+
+		private SortKey(String key) {
+			this.key = key;
+			this.values = key.split(";", -1);
+			this.numbers = new long[values.length];
+			for (int i = 0; i < values.length; i++) {
+				Matcher m = LEADING_NUMBER.matcher(values[i]);
+				numbers[i] = m.find() ? Long.parseLong(m.group()) : NO_NUMBER;
+			}
+		}
+	}
+
+	/**
+	 * Get number of rows
+	 * 
+	 * @return number of rows
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Get the key of a row
+	 * 
+	 * @param row row number
+	 * @return zip code (and dimensions, separated by ";")
+	 */
+	public String getKey(int row) {
+		return keys[row];
+	}
+
+	/**
+	 * Get the population of a row
+	 * 
+	 * @param row row number
+	 * @return population
+	 */
+	public int getPopulation(int row) {
+		return population[row];
+	}
+
+	/**
+	 * Check if the table has fractional population
+	 * 
+	 * @return true if fractions are present
+	 */
+	public boolean hasFractions() {
+		return fractions != null;
+	}
+
+	/**
+	 * Get the fractional population of a row
+	 * 
+	 * @param row row number
+	 * @return fraction
+	 */
+	public double getFraction(int row) {
+		return fractions[row];
+	}
+
+	/**
+	 * Create a sorted table
+	 * 
+	 * @param results population per zip code (and dimensions)
+	 * @param fractions fractional population per zip code, or null
+	 * @return table
+	 */
+	public static ResultTable of(Map<String, Integer> results, Map<String, Double> fractions) {
+		// parse each key only once, instead of for every comparison
+		SortKey[] sorted = results.keySet().stream().map(SortKey::new).sorted().toArray(SortKey[]::new);
+		String[] keys = new String[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			keys[i] = sorted[i].key;
+		}
+
+		int[] population = new int[keys.length];
+		double[] fracs = (fractions != null) ? new double[keys.length] : null;
+		for (int i = 0; i < keys.length; i++) {
+			population[i] = results.get(keys[i]);
+			if (fracs != null) {
+				fracs[i] = fractions.getOrDefault(keys[i], 0.0);
+			}
+		}
+		return new ResultTable(keys, population, fracs);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param keys sorted keys
+	 * @param population population per key
+	 * @param fractions fractional population per key, or null
+	 */
+	private ResultTable(String[] keys, int[] population, double[] fractions) {
+		this.keys = keys;
+		this.population = population;
+		this.fractions = fractions;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the results to a file
+ * 
+ * @author Bart Hanssens
+ */
+public interface ResultWriter {
+	/**
+	 * Output format
+	 */
+	public enum Format { CSV, CSV_GZIP, ARROW }
+
+	/**
+	 * Write the results
+	 * 
+	 * @param table sorted results
+	 * @param keyHeader column name(s) of the key, separated by ";"
+	 * @param file output file
+	 * @throws IOException 
+	 */
+	public void write(ResultTable table, String keyHeader, Path file) throws IOException;
+
+	/**
+	 * Create a writer for an output format
+	 * 
+	 * @param format output format
+	 * @param bufferSize size of the output buffer, in bytes
+	 * @return writer
+	 */
+	public static ResultWriter create(Format format, int bufferSize) {
+		switch(format) {
+			case CSV:
+				return new CsvResultWriter(bufferSize, false);
+			case CSV_GZIP:
+				return new CsvResultWriter(bufferSize, true);
+			case ARROW:
+				return new ArrowResultWriter(bufferSize);
+			default:
+				throw new IllegalArgumentException("Unknown output format " + format);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip;
+
+import be.gov.data.populationperzip.locator.PostalLocator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import picocli.CommandLine;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class MainTest {
+	private final static GeometryFactory FACTORY = new GeometryFactory();
+
+	/**
+	 * Grid of 10 by 10 square zip codes
+	 * 
+	 * @return zip codes
+	 */
+	private static Map<String, MultiPolygon> zipcodes() {
+		Map<String, MultiPolygon> zipcodes = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			double x = (i % 10) * 10;
+			double y = (i / 10) * 10;
+			Polygon square = FACTORY.createPolygon(new Coordinate[] { 
+				new Coordinate(x, y), new Coordinate(x + 10, y), new Coordinate(x + 10, y + 10), 
+				new Coordinate(x, y + 10), new Coordinate(x, y) });
+			zipcodes.put(String.valueOf(1000 + i), FACTORY.createMultiPolygon(new Polygon[] { square }));
+		}
+		return zipcodes;
+	}
+
+	/**
+	 * Random sector centers within the grid
+	 * 
+	 * @return sectors
+	 */
+	private static Map<String, Point> sectors() {
+		Random rnd = new Random(42);
+		Map<String, Point> sectors = new HashMap<>();
+		for (int i = 0; i < 5_000; i++) {
+			sectors.put("S" + i, FACTORY.createPoint(new Coordinate(rnd.nextDouble() * 100, rnd.nextDouble() * 100)));
+		}
+		return sectors;
+	}
+
+	/**
+	 * Map the sectors using a number of threads
+	 * 
+	 * @param threads number of threads
+	 * @return zip code per sector
+	 * @throws Exception 
+	 */
+	private static Map<String, String> map(int threads) throws Exception {
+		Main main = new Main();
+		new CommandLine(main).parseArgs("-z", "zipcodes.shp", "-t", String.valueOf(threads));
+
+		PostalLocator locator = PostalLocator.create(PostalLocator.Type.PREPARED, zipcodes());
+		return main.mapSectors(sectors(), e -> main.findZipCode(locator, e));
+	}
+
+	@Test
+	public void mapSectorsThreadsTest() throws Exception {
+		Map<String, String> sequential = map(1);
+		assertEquals(5_000, sequential.size());
+		assertEquals(sequential, map(4));
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.locator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.WKTReader;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class GridLocatorTest {
+	private final static GeometryFactory FACTORY = new GeometryFactory();
+	private final static double CELL_SIZE = 100;
+
+	@TempDir
+	Path tmp;
+
+	/**
+	 * Postal districts with boundaries along and across cell boundaries, an enclave and an island
+	 * 
+	 * @return zip codes
+	 * @throws Exception 
+	 */
+	private static Map<String, MultiPolygon> zipcodes() throws Exception {
+		WKTReader wkt = new WKTReader(FACTORY);
+		Map<String, MultiPolygon> zipcodes = new HashMap<>();
+		zipcodes.put("1000", (MultiPolygon) wkt.read("MULTIPOLYGON(((0 0, 500 0, 430 500, 500 1000, 0 1000, 0 0), "
+												+ "(300 300, 420 300, 420 420, 300 420, 300 300)))"));
+		zipcodes.put("1010", (MultiPolygon) wkt.read("MULTIPOLYGON(((300 300, 420 300, 420 420, 300 420, 300 300)))"));
+		zipcodes.put("2000", (MultiPolygon) wkt.read("MULTIPOLYGON(((500 0, 1000 0, 1000 600, 430 500, 500 0)))"));
+		zipcodes.put("3000", (MultiPolygon) wkt.read("MULTIPOLYGON(((430 500, 1000 600, 1000 1000, 500 1000, 430 500)), "
+												+ "((1100 1100, 1150 1100, 1150 1150, 1100 1150, 1100 1100)))"));
+		return zipcodes;
+	}
+
+	/**
+	 * Points on and near cell boundaries and district boundaries, and random points.
+	 * Points exactly on a district boundary are skipped, since they are not within any district.
+	 * 
+	 * @param zipcodes postal districts
+	 * @return points
+	 */
+	private static List<Point> points(Map<String, MultiPolygon> zipcodes) {
+		List<Geometry> boundaries = new ArrayList<>();
+		for (MultiPolygon p: zipcodes.values()) {
+			boundaries.add(p.getBoundary());
+		}
+
+		List<Coordinate> coords = new ArrayList<>();
+		double[] offsets = { -0.001, 0, 0.001, 17.3 };
+		for (int i = -1; i <= 24; i++) {
+			for (int j = -1; j <= 24; j++) {
+				for (double dx: offsets) {
+					for (double dy: offsets) {
+						coords.add(new Coordinate(i * CELL_SIZE / 2 + dx, j * CELL_SIZE / 2 + dy));
+					}
+				}
+			}
+		}
+		Random rnd = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			coords.add(new Coordinate(rnd.nextDouble() * 1200 - 50, rnd.nextDouble() * 1200 - 50));
+		}
+
+		List<Point> points = new ArrayList<>();
+		for (Coordinate c: coords) {
+			Point p = FACTORY.createPoint(c);
+			if (boundaries.stream().allMatch(b -> b.distance(p) > 1e-9)) {
+				points.add(p);
+			}
+		}
+		return points;
+	}
+
+	@Test
+	public void sameAsPreparedTest() throws Exception {
+		Map<String, MultiPolygon> zipcodes = zipcodes();
+		GridLocator grid = new GridLocator(zipcodes, CELL_SIZE);
+		PreparedLocator prepared = new PreparedLocator(zipcodes);
+
+		assertTrue(grid.boundaryCells() > 0);
+		for (Point p: points(zipcodes)) {
+			assertEquals(prepared.locate(p), grid.locate(p.getX(), p.getY()), p.toText());
+		}
+	}
+
+	@Test
+	public void writeReadTest() throws Exception {
+		Map<String, MultiPolygon> zipcodes = zipcodes();
+		GridLocator grid = new GridLocator(zipcodes, CELL_SIZE);
+
+		Path file = tmp.resolve("grid.ppzg");
+		grid.write(file);
+		GridLocator copy = GridLocator.read(file);
+
+		assertEquals(grid.boundaryCells(), copy.boundaryCells());
+		assertEquals(grid.size(), copy.size());
+		for (Point p: points(zipcodes)) {
+			assertEquals(grid.locate(p), copy.locate(p), p.toText());
+		}
+	}
+}
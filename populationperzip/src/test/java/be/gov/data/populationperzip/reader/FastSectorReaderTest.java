@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.reader;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class FastSectorReaderTest {
+
+	private Path fixture() throws Exception {
+		return Paths.get(getClass().getResource("/sectors.geojson").toURI());
+	}
+
+	@Test
+	public void sameGeometriesTest() throws Exception {
+		Path file = fixture();
+
+		Map<String, Geometry> expected = new SectorReader().readGeometries(file);
+		Map<String, Geometry> actual = new FastSectorReader().readGeometries(file);
+
+		assertEquals(3, expected.size());
+		assertEquals(expected.keySet(), actual.keySet());
+		for (Map.Entry<String, Geometry> e: expected.entrySet()) {
+			assertTrue(e.getValue().equalsExact(actual.get(e.getKey())), e.getKey());
+		}
+	}
+
+	@Test
+	public void samePointsTest() throws Exception {
+		Path file = fixture();
+
+		Map<String, Point> expected = new SectorReader().read(file);
+		Map<String, Point> actual = new FastSectorReader().read(file);
+
+		assertEquals(expected.keySet(), actual.keySet());
+		for (Map.Entry<String, Point> e: expected.entrySet()) {
+			assertTrue(e.getValue().equalsExact(actual.get(e.getKey())), e.getKey());
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.server;
+
+import be.gov.data.populationperzip.locator.PostalLocator;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.geotools.referencing.operation.transform.IdentityTransform;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class LookupServerTest {
+	private final HttpClient client = HttpClient.newHttpClient();
+	private LookupServer server;
+
+	@BeforeEach
+	public void start() throws Exception {
+		// longitude / latitude for WGS84, large numbers for the CRS of the postal districts
+		PostalLocator locator = p -> {
+			if (p.getX() < 0) {
+				throw new IllegalStateException("Negative coordinate");
+			}
+			return (p.getX() < 180) ? "1000" : (p.getX() < 200_000) ? "2000" : null;
+		};
+		server = new LookupServer(0, 2, locator, IdentityTransform.create(2), Map.of("21004A00-", "1000"));
+		server.start();
+	}
+
+	@AfterEach
+	public void stop() {
+		server.stop();
+	}
+
+	private HttpResponse<String> get(String path) throws Exception {
+		URI uri = URI.create("http://localhost:" + server.getPort() + path);
+		return client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	@Test
+	public void zipLatLonTest() throws Exception {
+		HttpResponse<String> resp = get("/zip?lat=50.85&lon=4.35");
+		assertEquals(200, resp.statusCode());
+		assertEquals("{\"x\":4.35,\"y\":50.85,\"zip\":\"1000\"}", resp.body());
+
+		assertEquals(400, get("/zip?lat=50.85&lon=east").statusCode());
+	}
+
+	@Test
+	public void zipXYTest() throws Exception {
+		HttpResponse<String> resp = get("/zip?x=149000&y=170000");
+		assertEquals(200, resp.statusCode());
+		assertEquals("{\"x\":149000.00,\"y\":170000.00,\"zip\":\"2000\"}", resp.body());
+
+		resp = get("/zip?x=300000&y=170000");
+		assertEquals(404, resp.statusCode());
+		assertEquals("{\"x\":300000.00,\"y\":170000.00,\"zip\":null}", resp.body());
+
+		assertEquals(400, get("/zip").statusCode());
+	}
+
+	@Test
+	public void sectorTest() throws Exception {
+		HttpResponse<String> resp = get("/sector/21004A00-");
+		assertEquals(200, resp.statusCode());
+		assertEquals("{\"sector\":\"21004A00-\",\"zip\":\"1000\"}", resp.body());
+
+		resp = get("/sector/99999Z99-");
+		assertEquals(404, resp.statusCode());
+		assertEquals("{\"error\":\"No zipcode for sector 99999Z99-\"}", resp.body());
+	}
+
+	@Test
+	public void errorTest() throws Exception {
+		HttpResponse<String> resp = get("/zip?x=-1&y=1");
+		assertEquals(500, resp.statusCode());
+		assertEquals("{\"error\":\"Internal error\"}", resp.body());
+
+		URI uri = URI.create("http://localhost:" + server.getPort() + "/metrics");
+		resp = client.send(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build(), 
+							HttpResponse.BodyHandlers.ofString());
+		assertEquals(405, resp.statusCode());
+	}
+
+	@Test
+	public void metricsTest() throws Exception {
+		get("/zip?x=149000&y=170000");
+		get("/zip?lat=50.85&lon=4.35");
+		get("/sector/21004A00-");
+
+		String zip = "{\"zip\":{\"count\":2,";
+		String sector = "\"sector\":{\"count\":1,";
+
+		// latency is recorded after the response is sent, so the last requests may not be counted yet
+		HttpResponse<String> resp = get("/metrics");
+		for (int i = 0; i < 50 && !(resp.body().startsWith(zip) && resp.body().contains(sector)); i++) {
+			Thread.sleep(10);
+			resp = get("/metrics");
+		}
+		assertEquals(200, resp.statusCode());
+		assertTrue(resp.body().startsWith(zip), resp.body());
+		assertTrue(resp.body().contains(sector), resp.body());
+		assertTrue(resp.body().contains("\"metrics\":{"), resp.body());
+	}
+}
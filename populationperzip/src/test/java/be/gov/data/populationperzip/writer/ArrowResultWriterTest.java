@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.Field;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class ArrowResultWriterTest {
+	@TempDir
+	Path tmp;
+
+	/**
+	 * Read a dictionary encoded string column
+	 * 
+	 * @param reader file reader
+	 * @param root current batch
+	 * @param name column name
+	 * @return values
+	 * @throws Exception 
+	 */
+	private static String[] decode(ArrowFileReader reader, VectorSchemaRoot root, String name) throws Exception {
+		FieldVector indices = root.getVector(name);
+		assertNotNull(indices.getField().getDictionary(), name);
+		Dictionary dict = reader.getDictionaryVectors().get(indices.getField().getDictionary().getId());
+
+		String[] values = new String[root.getRowCount()];
+		try (VarCharVector decoded = (VarCharVector) DictionaryEncoder.decode(indices, dict)) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = new String(decoded.get(i), StandardCharsets.UTF_8);
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void roundTripTest() throws Exception {
+		Map<String, Integer> results = new HashMap<>();
+		Map<String, Double> fractions = new HashMap<>();
+		for (int zip = 1000; zip < 1300; zip += 10) {
+			results.put(zip + ";M", zip);
+			results.put(zip + ";F", zip + 1);
+			results.put(zip + ";", 0);
+			fractions.put(zip + ";M", zip / 3.0);
+			fractions.put(zip + ";F", -zip / 7.0);
+		}
+		ResultTable table = ResultTable.of(results, fractions);
+
+		Path file = tmp.resolve("result.arrow");
+		new ArrowResultWriter(64).write(table, "Zip;Sex", file);
+
+		try (BufferAllocator allocator = new RootAllocator();
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+			ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+			VectorSchemaRoot root = reader.getVectorSchemaRoot();
+			List<String> names = root.getSchema().getFields().stream()
+										.map(Field::getName).collect(Collectors.toList());
+			assertEquals(List.of("Zip", "Sex", "Population", "Fraction"), names);
+
+			assertEquals(1, reader.getRecordBlocks().size());
+			assertTrue(reader.loadNextBatch());
+			assertEquals(table.size(), root.getRowCount());
+
+			String[] zips = decode(reader, root, "Zip");
+			String[] sexes = decode(reader, root, "Sex");
+			IntVector population = (IntVector) root.getVector("Population");
+			Float8Vector fraction = (Float8Vector) root.getVector("Fraction");
+			for (int i = 0; i < table.size(); i++) {
+				assertEquals(table.getKey(i), zips[i] + ";" + sexes[i]);
+				assertEquals(table.getPopulation(i), population.get(i));
+				assertEquals(table.getFraction(i), fraction.get(i));
+			}
+			assertFalse(reader.loadNextBatch());
+		}
+	}
+
+	@Test
+	public void noFractionTest() throws Exception {
+		Map<String, Integer> results = Map.of("1000", 10, "9000", 90, "1050", 5);
+		ResultTable table = ResultTable.of(results, null);
+
+		Path file = tmp.resolve("result.arrow");
+		new ArrowResultWriter(4096).write(table, "Zip", file);
+
+		try (BufferAllocator allocator = new RootAllocator();
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+			ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+			VectorSchemaRoot root = reader.getVectorSchemaRoot();
+			assertEquals(2, root.getSchema().getFields().size());
+			assertTrue(reader.loadNextBatch());
+
+			String[] zips = decode(reader, root, "Zip");
+			IntVector population = (IntVector) root.getVector("Population");
+			assertEquals(List.of("1000", "1050", "9000"), List.of(zips));
+			for (int i = 0; i < table.size(); i++) {
+				assertEquals((int) results.get(zips[i]), population.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021, FPS BOSA DG DT
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package be.gov.data.populationperzip.writer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class CsvResultWriterTest {
+	@TempDir
+	Path tmp;
+
+	/**
+	 * Values close to a tie when rounding to 4 decimals, large values and special values
+	 * 
+	 * @return values
+	 */
+	private static List<Double> values() {
+		List<Double> values = new ArrayList<>(List.of(0.0, -0.0, 0.00005, -0.00005, 0.00015, 0.00025, 1.23445, 
+			2.5e-5, 0.99995, 9.99995, 12345.67895, 0.1 + 0.2, 1e-10, -1e-10, 
+			9.2e14 + 0.5, 922337203685477.5, 1e15, 1e18 + 1, 1.7e308, Double.MIN_VALUE, Double.NaN));
+
+		Random rnd = new Random(42);
+		for (int i = 0; i < 10_000; i++) {
+			double tie = (rnd.nextInt(1_000_000) + 0.5) / 10_000;
+			values.add(tie * Math.pow(10, rnd.nextInt(8)));
+			values.add(Math.nextUp(tie));
+			values.add(Math.nextDown(tie));
+			values.add(rnd.nextDouble() * 1000);
+		}
+		return values;
+	}
+
+	/**
+	 * Write a table with one row per value
+	 * 
+	 * @param file output file
+	 * @param gzip compress as gzip
+	 * @param values values
+	 * @return expected fraction per key
+	 * @throws Exception 
+	 */
+	private static Map<String, String> write(Path file, boolean gzip, List<Double> values) throws Exception {
+		Map<String, Integer> results = new HashMap<>();
+		Map<String, Double> fractions = new HashMap<>();
+		Map<String, String> expected = new HashMap<>();
+		for (int i = 0; i < values.size(); i++) {
+			String key = "key" + i;
+			results.put(key, i);
+			fractions.put(key, values.get(i));
+			expected.put(key, String.format(Locale.ROOT, "%.4f", values.get(i)));
+		}
+		new CsvResultWriter(4096, gzip).write(ResultTable.of(results, fractions), "Zip", file);
+		return expected;
+	}
+
+	@Test
+	public void fractionTest() throws Exception {
+		Path file = tmp.resolve("result.csv");
+		Map<String, String> expected = write(file, false, values());
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals("Zip;Population;Fraction", lines.get(0));
+		assertEquals(expected.size() + 1, lines.size());
+		for (String line: lines.subList(1, lines.size())) {
+			String[] cols = line.split(";");
+			assertEquals(expected.get(cols[0]), cols[2], line);
+		}
+	}
+
+	@Test
+	public void gzipTest() throws Exception {
+		List<Double> values = values();
+		Path plain = tmp.resolve("result.csv");
+		Path gzip = tmp.resolve("result.csv.gz");
+		write(plain, false, values);
+		write(gzip, true, values);
+
+		byte[] expected = Files.readAllBytes(plain);
+		byte[] compressed = Files.readAllBytes(gzip);
+
+		// trailer: CRC-32 and size of the uncompressed data, little endian
+		ByteBuffer trailer = ByteBuffer.wrap(compressed, compressed.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		crc.update(expected);
+		assertEquals(crc.getValue(), trailer.getInt() & 0xFFFF_FFFFL);
+		assertEquals(expected.length, trailer.getInt());
+
+		// GZIPInputStream also checks the trailer
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) {
+			assertArrayEquals(expected, in.readAllBytes());
+		}
+	}
+}